@@ -0,0 +1,47 @@
+package fuel3d.benchmarks;
+
+import fuel3d.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// CPU cost of one frame: nextFrame, recordWith/CmdRecorder.start, draws, endFrame and enqueueFrame
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrameLoopBenchmark {
+    @Param({"1", "1000"})
+    public int drawCount;
+
+    private HeadlessRenderer headless;
+    private Pipeline pipeline;
+    private Framebuffer framebuffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        headless = new HeadlessRenderer(true, 256, 256);
+        pipeline = new Pipeline(headless.vertexShader(), headless.fragmentShader(), headless.target, headless.renderer);
+        framebuffer = new Framebuffer(headless.target, pipeline, headless.renderer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        headless.destroy();
+    }
+
+    @Benchmark
+    public void frame() {
+        Fuel3D renderer = headless.renderer;
+        int frame = renderer.nextFrame();
+        try (CmdRecorder recorder = renderer.recordWith(framebuffer, pipeline)) {
+            for (int i = 0; i < drawCount; i++) {
+                recorder.drawVertices(3);
+            }
+        }
+        renderer.endFrame();
+        renderer.enqueueFrame(frame);
+    }
+}
@@ -0,0 +1,63 @@
+package fuel3d.benchmarks;
+
+import fuel3d.*;
+
+import static org.lwjgl.vulkan.VK10.VK_FORMAT_R8G8B8A8_UNORM;
+
+public class HeadlessRenderer { // Headless Fuel3D rendering into an offscreen image, shared setup of the benchmarks
+    public static final String VERTEX_SHADER = """
+            #version 450
+
+            layout(location = 0) out vec3 fragColor;
+
+            vec2 positions[3] = vec2[](vec2(0.0, -0.5), vec2(0.5, 0.5), vec2(-0.5, 0.5));
+            vec3 colors[3] = vec3[](vec3(1.0, 0.0, 0.0), vec3(0.0, 1.0, 0.0), vec3(0.0, 0.0, 1.0));
+
+            void main() {
+                gl_Position = vec4(positions[gl_VertexIndex], 0.0, 1.0);
+                fragColor = colors[gl_VertexIndex];
+            }
+            """;
+    public static final String FRAGMENT_SHADER = """
+            #version 450
+
+            layout(location = 0) in vec3 fragColor;
+
+            layout(location = 0) out vec4 outColor;
+
+            void main() {
+                outColor = vec4(fragColor, 1.0);
+            }
+            """;
+
+    public final Fuel3D renderer;
+    public final Image target;
+
+    public HeadlessRenderer(boolean cacheShaders, int width, int height) {
+        Logger.Settings loggerSettings = new Logger.Settings();
+        loggerSettings.messageFunction = (messageType, message) -> { // Keep the benchmark output readable
+            if (messageType == Logger.MessageType.WARNING || messageType == Logger.MessageType.ERROR)
+                System.err.println("[Fuel3D] " + messageType + ": " + message);
+        };
+
+        Fuel3D.Settings settings = new Fuel3D.Settings();
+        settings.logger = new Logger(loggerSettings);
+        settings.pipelineCachePath = null;
+        if (!cacheShaders) settings.shaderCacheDirectory = null;
+
+        renderer = new Fuel3D(settings);
+        target = new Image(width, height, VK_FORMAT_R8G8B8A8_UNORM, renderer);
+    }
+
+    public Shader vertexShader() {
+        return Shader.fromGLSLCode(VERTEX_SHADER, Shader.ShaderType.VertexShader, renderer);
+    }
+
+    public Shader fragmentShader() {
+        return Shader.fromGLSLCode(FRAGMENT_SHADER, Shader.ShaderType.FragmentShader, renderer);
+    }
+
+    public void destroy() {
+        renderer.destroy();
+    }
+}
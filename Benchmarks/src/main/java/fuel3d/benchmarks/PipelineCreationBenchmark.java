@@ -0,0 +1,44 @@
+package fuel3d.benchmarks;
+
+import fuel3d.Pipeline;
+import fuel3d.Shader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// Pipeline creation through the shared VkPipelineCache, and the deduplicated path through Pipeline.obtain
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PipelineCreationBenchmark {
+    private HeadlessRenderer headless;
+    private Shader vertexShader, fragmentShader;
+    private Pipeline retained; // Keeps the obtained pipeline alive so obtain() hits the registry
+
+    @Setup(Level.Trial)
+    public void setup() {
+        headless = new HeadlessRenderer(true, 16, 16);
+        vertexShader = headless.vertexShader();
+        fragmentShader = headless.fragmentShader();
+        retained = Pipeline.obtain(vertexShader, fragmentShader, headless.target, new Pipeline.Settings(), headless.renderer);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        retained.destroy();
+        headless.destroy();
+    }
+
+    @Benchmark
+    public void createPipeline() {
+        new Pipeline(vertexShader, fragmentShader, headless.target, headless.renderer).destroy();
+    }
+
+    @Benchmark
+    public void obtainSharedPipeline() {
+        Pipeline.obtain(vertexShader, fragmentShader, headless.target, new Pipeline.Settings(), headless.renderer).destroy();
+    }
+}
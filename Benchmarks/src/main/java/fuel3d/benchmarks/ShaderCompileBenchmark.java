@@ -0,0 +1,40 @@
+package fuel3d.benchmarks;
+
+import fuel3d.Shader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// GLSL to VkShaderModule through ShaderCompiler, with and without the on-disk SPIR-V cache
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShaderCompileBenchmark {
+    @Param({"false", "true"})
+    public boolean cached;
+
+    private HeadlessRenderer headless;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        headless = new HeadlessRenderer(cached, 16, 16);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        headless.destroy();
+    }
+
+    @Benchmark
+    public void compileVertexShader() {
+        headless.vertexShader().destroy();
+    }
+
+    @Benchmark
+    public void compileFragmentShader() {
+        headless.fragmentShader().destroy();
+    }
+}
@@ -0,0 +1,49 @@
+package fuel3d;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+// Common execution and memory dependencies between compute, graphics and transfer work, see CmdRecorder.barrier
+public enum Barrier {
+    COMPUTE_TO_COMPUTE(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+            VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT),
+    COMPUTE_TO_VERTEX_INPUT(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+            VK_PIPELINE_STAGE_VERTEX_INPUT_BIT, VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT | VK_ACCESS_INDEX_READ_BIT),
+    COMPUTE_TO_INDIRECT(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+            VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT, VK_ACCESS_INDIRECT_COMMAND_READ_BIT),
+    COMPUTE_TO_GRAPHICS_SHADER(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+            VK_PIPELINE_STAGE_VERTEX_SHADER_BIT | VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT),
+    COMPUTE_TO_TRANSFER(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+            VK_PIPELINE_STAGE_TRANSFER_BIT, VK_ACCESS_TRANSFER_READ_BIT),
+    GRAPHICS_TO_COMPUTE(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT,
+            VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT | VK_ACCESS_SHADER_WRITE_BIT,
+            VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT),
+    TRANSFER_TO_COMPUTE(VK_PIPELINE_STAGE_TRANSFER_BIT, VK_ACCESS_TRANSFER_WRITE_BIT,
+            VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT | VK_ACCESS_SHADER_WRITE_BIT),
+    GRAPHICS_SHADER_READ_TO_COMPUTE_WRITE(VK_PIPELINE_STAGE_VERTEX_SHADER_BIT | VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, 0,
+            VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_WRITE_BIT); // Write after read only needs execution order
+
+    private final int srcStageMask, srcAccessMask, dstStageMask, dstAccessMask;
+
+    Barrier(int srcStageMask, int srcAccessMask, int dstStageMask, int dstAccessMask) {
+        this.srcStageMask = srcStageMask;
+        this.srcAccessMask = srcAccessMask;
+        this.dstStageMask = dstStageMask;
+        this.dstAccessMask = dstAccessMask;
+    }
+
+    protected int getSrcStageMask() {
+        return srcStageMask;
+    }
+
+    protected int getSrcAccessMask() {
+        return srcAccessMask;
+    }
+
+    protected int getDstStageMask() {
+        return dstStageMask;
+    }
+
+    protected int getDstAccessMask() {
+        return dstAccessMask;
+    }
+}
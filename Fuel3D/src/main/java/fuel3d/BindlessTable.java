@@ -0,0 +1,132 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.VK_DESCRIPTOR_POOL_CREATE_UPDATE_AFTER_BIND_BIT;
+
+// Global arrays of every texture and storage buffer in one update-after-bind set, bound once per frame. Shaders index
+// them with the ints returned by add, using nonuniformEXT when the index varies within a draw. Needs descriptor indexing.
+public class BindlessTable {
+    private final Fuel3D renderer;
+    private final DescriptorLayout layout;
+    private final Object layoutKey;
+    private final IndexAllocator textureIndices, bufferIndices;
+    private long pool;
+    private DescriptorSet set;
+
+    public static final int TEXTURE_BINDING = 0, BUFFER_BINDING = 1;
+
+    public BindlessTable(int maxTextures, int maxBuffers, Fuel3D renderer) {
+        this.renderer = renderer;
+        if (!renderer.isDescriptorIndexingSupported()) renderer.getLogger().error("Device does not support descriptor indexing");
+        layout = new DescriptorLayout()
+                .array(TEXTURE_BINDING, DescriptorLayout.DescriptorType.SAMPLED_IMAGE, maxTextures, DescriptorLayout.ALL)
+                .array(BUFFER_BINDING, DescriptorLayout.DescriptorType.STORAGE_BUFFER, maxBuffers, DescriptorLayout.ALL)
+                .updateAfterBind();
+        layoutKey = layout.stateKey();
+        textureIndices = new IndexAllocator(maxTextures);
+        bufferIndices = new IndexAllocator(maxBuffers);
+        renderer.addBindlessTable(this);
+
+        create(maxTextures, maxBuffers);
+    }
+
+    private void create(int maxTextures, int maxBuffers) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.malloc(2, stack);
+            poolSizes.get(0)
+                    .type(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER)
+                    .descriptorCount(maxTextures);
+            poolSizes.get(1)
+                    .type(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER)
+                    .descriptorCount(maxBuffers);
+            VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(VK_DESCRIPTOR_POOL_CREATE_UPDATE_AFTER_BIND_BIT)
+                    .maxSets(1)
+                    .pPoolSizes(poolSizes);
+            renderer.chErr(vkCreateDescriptorPool(renderer.getDevice(), poolInfo, null, lb));
+            pool = lb.get(0);
+
+            VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .descriptorPool(pool)
+                    .pSetLayouts(stack.longs(renderer.getPipelineRegistry().acquireSetLayout(layout)));
+            renderer.chErr(vkAllocateDescriptorSets(renderer.getDevice(), allocateInfo, lb));
+            set = new DescriptorSet(lb.get(0), layout, renderer);
+        }
+    }
+
+    public int addTexture(Image image, Sampler sampler) { // The image must be in SHADER_READ_ONLY_OPTIMAL layout when sampled
+        int index = textureIndices.allocate();
+        set.image(TEXTURE_BINDING, index, image, sampler);
+        return index;
+    }
+
+    public int addTexture(Texture texture) { // Only once texture.isReady()
+        return addTexture(texture.getImage(), texture.getSampler());
+    }
+
+    // The slot is reused only once frames in flight, which may still index it, have finished
+    public void removeTexture(int index) {
+        renderer.retire(() -> textureIndices.free(index));
+    }
+
+    public int addBuffer(Buffer buffer) { // Needs STORAGE_BUFFER usage
+        int index = bufferIndices.allocate();
+        set.buffer(BUFFER_BINDING, index, buffer, 0, VK_WHOLE_SIZE);
+        return index;
+    }
+
+    public void removeBuffer(int index) {
+        renderer.retire(() -> bufferIndices.free(index));
+    }
+
+    public void bind(CmdRecorder recorder, int setIndex) {
+        recorder.bindDescriptorSet(setIndex, set);
+    }
+
+    public DescriptorLayout getLayout() { // Add to Pipeline.Settings.descriptorLayouts at the set index passed to bind
+        return layout;
+    }
+
+    protected void destroyObjects() {
+        vkDestroyDescriptorPool(renderer.getDevice(), pool, null);
+        renderer.getPipelineRegistry().releaseSetLayout(layoutKey);
+    }
+
+    public void destroy() {
+        destroyObjects();
+        renderer.removeBindlessTable(this);
+    }
+
+    private class IndexAllocator { // Free list over [0, capacity), the most recently freed index is reused first
+        private final int[] free;
+        private int freeCount = 0, next = 0;
+
+        private IndexAllocator(int capacity) {
+            free = new int[capacity];
+        }
+
+        private synchronized int allocate() {
+            if (freeCount > 0) return free[--freeCount];
+            if (next == free.length) renderer.getLogger().error("Bindless table is full (" + free.length + " entries)");
+            return next++;
+        }
+
+        private synchronized void free(int index) {
+            free[freeCount++] = index;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkBufferCreateInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class Buffer {
+    private final Fuel3D renderer;
+    private long buffer;
+    private MemoryAllocator.Allocation allocation;
+    private final long size;
+    private final int usage;
+    private final MemoryAllocator.MemoryUsage memoryUsage;
+
+    public Buffer(long size, int usage, MemoryAllocator.MemoryUsage memoryUsage, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.size = size;
+        this.usage = usage;
+        this.memoryUsage = memoryUsage;
+        renderer.addBuffer(this);
+
+        create();
+    }
+
+    protected void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkBufferCreateInfo bufferInfo = VkBufferCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .size(size)
+                    .usage(usage)
+                    .sharingMode(VK_SHARING_MODE_EXCLUSIVE)
+                    .queueFamilyIndexCount(0)
+                    .pQueueFamilyIndices(null);
+            renderer.chErr(vkCreateBuffer(renderer.getDevice(), bufferInfo, null, lb));
+            buffer = lb.get(0);
+
+            allocation = renderer.getMemoryAllocator().allocateBuffer(buffer, memoryUsage);
+        }
+    }
+
+    public void write(ByteBuffer data, long offset) { // Only for host visible buffers, copies data.remaining() bytes
+        if (!allocation.isMapped()) renderer.getLogger().error("Buffer is not host visible");
+        if (offset + data.remaining() > size) renderer.getLogger().error("Buffer write out of bounds");
+        memCopy(memAddress(data), allocation.getMappedAddress() + offset, data.remaining());
+    }
+
+    public void upload(ByteBuffer data, long offset) { // Writes directly if host visible, otherwise goes through a staging buffer
+        if (offset + data.remaining() > size) renderer.getLogger().error("Buffer upload out of bounds");
+        if (allocation.isMapped() && memoryUsage != MemoryAllocator.MemoryUsage.GPU_ONLY) { // GPU_ONLY may still be read by frames in flight
+            write(data, offset);
+        }
+        else {
+            renderer.uploadToBuffer(this, data, offset);
+        }
+    }
+
+    // Copies on the transfer queue, overlapping with rendering. Frames must not use the buffer until they called
+    // Fuel3D.acquireBuffer with the returned value and Fuel3D.getTransferQueue(). data can be reused right away.
+    public long uploadAsync(ByteBuffer data, long offset) {
+        if (offset + data.remaining() > size) renderer.getLogger().error("Buffer upload out of bounds");
+        return renderer.uploadToBufferAsync(this, data, offset);
+    }
+
+    public static Buffer vertexBuffer(long size, Fuel3D renderer) {
+        return new Buffer(size, VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                MemoryAllocator.MemoryUsage.GPU_ONLY, renderer);
+    }
+
+    public static Buffer indexBuffer(long size, Fuel3D renderer) {
+        return new Buffer(size, VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                MemoryAllocator.MemoryUsage.GPU_ONLY, renderer);
+    }
+
+    public void destroy() {
+        destroyObjects();
+        renderer.removeBuffer(this);
+    }
+
+    protected void destroyObjects() {
+        vkDestroyBuffer(renderer.getDevice(), buffer, null);
+        renderer.getMemoryAllocator().free(allocation);
+    }
+
+    protected long getBuffer() {
+        return buffer;
+    }
+
+    protected long getMappedAddress() {
+        return allocation.getMappedAddress();
+    }
+
+    public boolean isMapped() {
+        return allocation.isMapped();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getUsage() {
+        return usage;
+    }
+
+    public MemoryAllocator.MemoryUsage getMemoryUsage() {
+        return memoryUsage;
+    }
+}
@@ -1,47 +1,151 @@
 package fuel3d;
 
+import org.joml.Matrix4fc;
+import org.joml.Vector4fc;
+import org.lwjgl.PointerBuffer;
 import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
 import static org.lwjgl.system.MemoryUtil.NULL;
 import static org.lwjgl.vulkan.VK10.*;
 import static org.lwjgl.vulkan.VK10.vkCmdEndRenderPass;
+import static org.lwjgl.vulkan.VK12.vkCmdDrawIndexedIndirectCount;
 
 public class CmdRecorder implements AutoCloseable{ // 'dummy class', does not hold objects, useful in try-with resources pattern
     private VkCommandBuffer commandBuffer;
     private Framebuffer framebuffer;
     private Pipeline pipeline;
+    private long renderPass; // Being recorded, set for graph passes too where pipeline is null
+    private long boundLayout; // Pipeline layout descriptor sets are bound against
+    private int bindPoint;
+    private int pushConstantStages;
+    private boolean inRenderPass = false;
+    private int subpassContents; // Of the render pass being recorded, nextSubpass keeps it
+    private boolean secondary = false; // Secondary command buffer recorded by a ThreadRecorder
+    private final GpuProfiler profiler; // null if profiling is disabled, always null for secondary recorders
+
+    protected CmdRecorder() {
+        this(null);
+    }
 
-    protected CmdRecorder() { }
+    protected CmdRecorder(GpuProfiler profiler) {
+        this.profiler = profiler;
+    }
 
     protected void start(VkCommandBuffer commandBuffer, Framebuffer framebuffer, Pipeline pipeline) {
+        begin(commandBuffer, framebuffer, pipeline, VK_SUBPASS_CONTENTS_INLINE);
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getPipeline());
+        setViewportAndScissor();
+    }
+
+    protected void startParallel(VkCommandBuffer commandBuffer, Framebuffer framebuffer, Pipeline pipeline) {
+        begin(commandBuffer, framebuffer, pipeline, VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS); // Only execute() is allowed until close()
+    }
+
+    protected void startSecondary(VkCommandBuffer secondaryBuffer, CmdRecorder primary, Pipeline pipeline, Fuel3D renderer) {
+        if (!primary.inRenderPass || primary.subpassContents != VK_SUBPASS_CONTENTS_SECONDARY_COMMAND_BUFFERS)
+            renderer.getLogger().error("Secondary command buffers need a primary recorder started with Fuel3D.recordParallelWith");
+        this.commandBuffer = secondaryBuffer;
+        this.framebuffer = primary.framebuffer;
+        this.pipeline = pipeline;
+        boundLayout = pipeline.getPipelineLayout();
+        bindPoint = VK_PIPELINE_BIND_POINT_GRAPHICS;
+        pushConstantStages = pipeline.getPushConstantStages();
+        secondary = true;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkCommandBufferInheritanceInfo inheritanceInfo = VkCommandBufferInheritanceInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .renderPass(primary.renderPass)
+                    .subpass(pipeline.getSubpass())
+                    .framebuffer(framebuffer.getFramebuffer())
+                    .occlusionQueryEnable(false)
+                    .queryFlags(0)
+                    .pipelineStatistics(0);
+            VkCommandBufferBeginInfo commandBufferBeginInfo = VkCommandBufferBeginInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT | VK_COMMAND_BUFFER_USAGE_RENDER_PASS_CONTINUE_BIT)
+                    .pInheritanceInfo(inheritanceInfo);
+            renderer.chErr(vkBeginCommandBuffer(secondaryBuffer, commandBufferBeginInfo));
+        }
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getPipeline());
+        setViewportAndScissor();
+    }
+
+    // A RenderGraph raster pass, pipelines are bound with bindPipeline. One clear value per attachment, see beginRenderPass
+    protected void startGraphPass(VkCommandBuffer commandBuffer, Framebuffer framebuffer, long renderPass, float[][] clearValues) {
+        this.commandBuffer = commandBuffer;
+        this.framebuffer = framebuffer;
+        this.pipeline = null;
+        secondary = false;
+        inRenderPass = true;
+
+        beginRenderPass(renderPass, clearValues, VK_SUBPASS_CONTENTS_INLINE);
+    }
+
+    protected void startCommands(VkCommandBuffer commandBuffer) { // Outside of any render pass, for compute and barriers
+        this.commandBuffer = commandBuffer;
+        this.framebuffer = null;
+        this.pipeline = null;
+        secondary = false;
+        inRenderPass = false;
+    }
+
+    private void begin(VkCommandBuffer commandBuffer, Framebuffer framebuffer, Pipeline pipeline, int contents) {
         this.commandBuffer = commandBuffer;
         this.framebuffer = framebuffer;
         this.pipeline = pipeline;
+        boundLayout = pipeline.getPipelineLayout();
+        bindPoint = VK_PIPELINE_BIND_POINT_GRAPHICS;
+        pushConstantStages = pipeline.getPushConstantStages();
+        secondary = false;
+        inRenderPass = true;
 
+        beginRenderPass(pipeline.getRenderpass(), pipeline.getClearValues(), contents);
+    }
+
+    private void beginRenderPass(long renderPass, float[][] clearValues, int contents) { // {r, g, b, a} for colors, {depth} for depth
+        this.renderPass = renderPass;
+        subpassContents = contents;
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            VkClearValue.Buffer clearValues = VkClearValue.malloc(1, stack);
-            clearValues.color()
-                    .float32(0, pipeline.getClearColor()[0])
-                    .float32(1, pipeline.getClearColor()[1])
-                    .float32(2, pipeline.getClearColor()[2])
-                    .float32(3, pipeline.getClearColor()[3]);
+            VkClearValue.Buffer vkClearValues = VkClearValue.malloc(clearValues.length, stack);
+            for (int i = 0; i < clearValues.length; i++) {
+                if (clearValues[i].length == 1) {
+                    vkClearValues.get(i).depthStencil()
+                            .depth(clearValues[i][0])
+                            .stencil(0);
+                    continue;
+                }
+                vkClearValues.get(i).color()
+                        .float32(0, clearValues[i][0])
+                        .float32(1, clearValues[i][1])
+                        .float32(2, clearValues[i][2])
+                        .float32(3, clearValues[i][3]);
+            }
 
             VkRenderPassBeginInfo renderPassBeginInfo = VkRenderPassBeginInfo.malloc(stack)
                     .sType$Default()
                     .pNext(NULL)
-                    .renderPass(pipeline.getRenderpass())
+                    .renderPass(renderPass)
                     .framebuffer(framebuffer.getFramebuffer())
                     .renderArea(vkRect2D -> vkRect2D
                             .offset(vkOffset2D -> vkOffset2D.set(0, 0))
                             .extent(vkExtent2D -> vkExtent2D.set(
                                     framebuffer.getImage().getWidth(),
                                     framebuffer.getImage().getHeight())))
-                    .clearValueCount(1)
-                    .pClearValues(clearValues);
-            vkCmdBeginRenderPass(commandBuffer, renderPassBeginInfo, VK_SUBPASS_CONTENTS_INLINE);
-            vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getPipeline());
+                    .clearValueCount(clearValues.length)
+                    .pClearValues(vkClearValues);
+            vkCmdBeginRenderPass(commandBuffer, renderPassBeginInfo, contents);
+        }
+    }
 
+    private void setViewportAndScissor() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
             VkViewport.Buffer viewport = VkViewport.malloc(1, stack)
                     .x(0.0f)
                     .y(0.0f)
@@ -60,12 +164,221 @@ public class CmdRecorder implements AutoCloseable{ // 'dummy class', does not ho
         }
     }
 
+    public void bindPipeline(Pipeline pipeline) { // Inside a RenderGraph pass, with a pipeline created for that pass
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_GRAPHICS, pipeline.getPipeline());
+        this.pipeline = pipeline;
+        boundLayout = pipeline.getPipelineLayout();
+        bindPoint = VK_PIPELINE_BIND_POINT_GRAPHICS;
+        pushConstantStages = pipeline.getPushConstantStages();
+        setViewportAndScissor();
+    }
+
+    // From a depth pre-pass pipeline to the pipeline it was created from. Parallel recorders only switch the subpass,
+    // the secondary recorders of the new subpass are then recorded with the main pipeline
+    public void nextSubpass(Pipeline pipeline) {
+        vkCmdNextSubpass(commandBuffer, subpassContents);
+        if (subpassContents == VK_SUBPASS_CONTENTS_INLINE) bindPipeline(pipeline);
+        else this.pipeline = pipeline;
+    }
+
+    public void execute(CmdRecorder... secondaryRecorders) { // Executes closed secondary recorders, primary started with recordParallelWith only
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer secondaryBuffers = stack.mallocPointer(secondaryRecorders.length);
+            for (CmdRecorder secondaryRecorder : secondaryRecorders) {
+                secondaryBuffers.put(secondaryRecorder.commandBuffer);
+            }
+            secondaryBuffers.flip();
+            vkCmdExecuteCommands(commandBuffer, secondaryBuffers);
+        }
+    }
+
+    public void bindVertexBuffer(int binding, Buffer buffer, long offset) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkCmdBindVertexBuffers(commandBuffer, binding, stack.longs(buffer.getBuffer()), stack.longs(offset));
+        }
+    }
+
+    public void bindVertexBuffers(int firstBinding, Buffer... buffers) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer handles = stack.mallocLong(buffers.length);
+            for (Buffer buffer : buffers) {
+                handles.put(buffer.getBuffer());
+            }
+            handles.flip();
+            vkCmdBindVertexBuffers(commandBuffer, firstBinding, handles, stack.callocLong(buffers.length));
+        }
+    }
+
+    public void bindIndexBuffer(Buffer buffer, long offset, IndexType indexType) {
+        vkCmdBindIndexBuffer(commandBuffer, buffer.getBuffer(), offset, indexType.getType());
+    }
+
     public void drawVertices(int vertexCount) {
         vkCmdDraw(commandBuffer, vertexCount, 1, 0, 0);
     }
 
+    public void drawIndexed(int indexCount, int firstIndex, int vertexOffset) {
+        vkCmdDrawIndexed(commandBuffer, indexCount, 1, firstIndex, vertexOffset, 0);
+    }
+
+    public void drawVerticesInstanced(int vertexCount, int instanceCount, int firstInstance) {
+        vkCmdDraw(commandBuffer, vertexCount, instanceCount, 0, firstInstance);
+    }
+
+    public void drawIndexedInstanced(int indexCount, int instanceCount, int firstIndex, int vertexOffset, int firstInstance) {
+        vkCmdDrawIndexed(commandBuffer, indexCount, instanceCount, firstIndex, vertexOffset, firstInstance);
+    }
+
+    public void drawIndexedIndirect(Buffer buffer, long offset, int drawCount, int stride) { // drawCount > 1 needs multiDrawIndirect
+        vkCmdDrawIndexedIndirect(commandBuffer, buffer.getBuffer(), offset, drawCount, stride);
+    }
+
+    // The draw count is read by the GPU from countBuffer at countOffset, so a compute pass can write it
+    public void drawIndexedIndirectCount(Buffer buffer, long offset, Buffer countBuffer, long countOffset, int maxDrawCount, int stride) {
+        vkCmdDrawIndexedIndirectCount(commandBuffer, buffer.getBuffer(), offset, countBuffer.getBuffer(), countOffset, maxDrawCount, stride);
+    }
+
+    // Against the layout of the graphics pipeline being recorded, or of the last bound compute pipeline
+    public void bindDescriptorSet(int setIndex, DescriptorSet set, int... dynamicOffsets) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkCmdBindDescriptorSets(commandBuffer, bindPoint, boundLayout, setIndex, stack.longs(set.getSet()),
+                    dynamicOffsets.length == 0 ? null : stack.ints(dynamicOffsets));
+        }
+    }
+
+    // Push constants are written from stack memory, offset and size must be multiples of 4 within Settings.pushConstantSize
+    public void pushConstants(int offset, Matrix4fc matrix) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            long address = stack.nmalloc(16, 16 * Float.BYTES);
+            matrix.getToAddress(address);
+            nvkCmdPushConstants(commandBuffer, boundLayout, pushConstantStages, offset, 16 * Float.BYTES, address);
+        }
+    }
+
+    public void pushConstants(int offset, Vector4fc vector) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            long address = stack.nmalloc(16, 4 * Float.BYTES);
+            vector.getToAddress(address);
+            nvkCmdPushConstants(commandBuffer, boundLayout, pushConstantStages, offset, 4 * Float.BYTES, address);
+        }
+    }
+
+    public void pushConstants(int offset, int... values) { // Indices into a BindlessTable for example
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkCmdPushConstants(commandBuffer, boundLayout, pushConstantStages, offset, stack.ints(values));
+        }
+    }
+
+    public void pushConstants(int offset, float... values) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            vkCmdPushConstants(commandBuffer, boundLayout, pushConstantStages, offset, stack.floats(values));
+        }
+    }
+
+    public void pushConstants(int offset, ByteBuffer data) {
+        vkCmdPushConstants(commandBuffer, boundLayout, pushConstantStages, offset, data);
+    }
+
+    public void bindComputePipeline(ComputePipeline computePipeline) {
+        vkCmdBindPipeline(commandBuffer, VK_PIPELINE_BIND_POINT_COMPUTE, computePipeline.getPipeline());
+        boundLayout = computePipeline.getPipelineLayout();
+        bindPoint = VK_PIPELINE_BIND_POINT_COMPUTE;
+        pushConstantStages = VK_SHADER_STAGE_COMPUTE_BIT;
+    }
+
+    public void dispatch(int groupCountX, int groupCountY, int groupCountZ) {
+        vkCmdDispatch(commandBuffer, groupCountX, groupCountY, groupCountZ);
+    }
+
+    public void dispatchIndirect(Buffer buffer, long offset) { // VkDispatchIndirectCommand, the buffer needs INDIRECT_BUFFER usage
+        vkCmdDispatchIndirect(commandBuffer, buffer.getBuffer(), offset);
+    }
+
+    public void barrier(Barrier barrier) { // Global memory barrier, covers every buffer and image
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryBarrier.Buffer memoryBarrier = VkMemoryBarrier.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .srcAccessMask(barrier.getSrcAccessMask())
+                    .dstAccessMask(barrier.getDstAccessMask());
+            vkCmdPipelineBarrier(commandBuffer, barrier.getSrcStageMask(), barrier.getDstStageMask(), 0, memoryBarrier, null, null);
+        }
+    }
+
+    public void barrier(Buffer buffer, Barrier barrier) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkBufferMemoryBarrier.Buffer bufferBarrier = VkBufferMemoryBarrier.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .srcAccessMask(barrier.getSrcAccessMask())
+                    .dstAccessMask(barrier.getDstAccessMask())
+                    .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .buffer(buffer.getBuffer())
+                    .offset(0)
+                    .size(VK_WHOLE_SIZE);
+            vkCmdPipelineBarrier(commandBuffer, barrier.getSrcStageMask(), barrier.getDstStageMask(), 0, null, bufferBarrier, null);
+        }
+    }
+
+    // Also transitions the layout, for example GENERAL for storage image writes and SHADER_READ_ONLY_OPTIMAL for sampling
+    public void barrier(Image image, int oldLayout, int newLayout, Barrier barrier) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageMemoryBarrier.Buffer imageBarrier = VkImageMemoryBarrier.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .srcAccessMask(barrier.getSrcAccessMask())
+                    .dstAccessMask(barrier.getDstAccessMask())
+                    .oldLayout(oldLayout)
+                    .newLayout(newLayout)
+                    .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .image(image.getImage())
+                    .subresourceRange(range -> range
+                            .aspectMask(image.getAspectMask())
+                            .baseMipLevel(0)
+                            .levelCount(VK_REMAINING_MIP_LEVELS)
+                            .baseArrayLayer(0)
+                            .layerCount(VK_REMAINING_ARRAY_LAYERS));
+            vkCmdPipelineBarrier(commandBuffer, barrier.getSrcStageMask(), barrier.getDstStageMask(), 0, null, null, imageBarrier);
+        }
+    }
+
+    // GPU time between the two markers shows up in Fuel3D.getGpuProfiler(), scopes can nest
+    public void beginProfile(String name) {
+        if (profiler != null) profiler.beginScope(commandBuffer, name);
+    }
+
+    public void endProfile() {
+        if (profiler != null) profiler.endScope(commandBuffer);
+    }
+
+    protected boolean isInRenderPass() {
+        return inRenderPass;
+    }
+
     @Override
     public void close() {
+        if (secondary) {
+            vkEndCommandBuffer(commandBuffer);
+            return;
+        }
+        if (!inRenderPass) return; // Compute recording, nothing to end
         vkCmdEndRenderPass(commandBuffer);
+        inRenderPass = false;
+    }
+
+    public enum IndexType {
+        UINT16(VK_INDEX_TYPE_UINT16), UINT32(VK_INDEX_TYPE_UINT32);
+
+        private final int type;
+
+        IndexType(int type) {
+            this.type = type;
+        }
+
+        private int getType() {
+            return type;
+        }
     }
 }
@@ -0,0 +1,85 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkComputePipelineCreateInfo;
+
+import java.nio.LongBuffer;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class ComputePipeline { // Recorded with Fuel3D.recordCompute inside a frame, or DeviceQueue.record for async compute
+    private final Fuel3D renderer;
+    private final Shader computeShader;
+    private long computePipeline, pipelineLayout;
+    private final List<DescriptorLayout> descriptorLayouts;
+    private final int pushConstantSize;
+    private PipelineRegistry.LayoutKey layoutKey;
+
+    public ComputePipeline(Shader computeShader, Fuel3D renderer) {
+        this(computeShader, List.of(), 0, renderer);
+    }
+
+    // descriptorLayouts are set 0, 1, ... in order, pushConstantSize in bytes
+    public ComputePipeline(Shader computeShader, List<DescriptorLayout> descriptorLayouts, int pushConstantSize, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.computeShader = computeShader;
+        this.descriptorLayouts = List.copyOf(descriptorLayouts);
+        this.pushConstantSize = pushConstantSize;
+        renderer.addComputePipeline(this);
+
+        create();
+    }
+
+    protected void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            layoutKey = renderer.getPipelineRegistry().acquireLayoutKey(descriptorLayouts, VK_SHADER_STAGE_COMPUTE_BIT, pushConstantSize);
+            pipelineLayout = renderer.getPipelineRegistry().acquireLayout(layoutKey, () -> layoutKey.createPipelineLayout(renderer));
+
+            VkComputePipelineCreateInfo.Buffer computePipelineInfo = VkComputePipelineCreateInfo.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .stage(shaderStage -> shaderStage
+                            .sType$Default()
+                            .pNext(NULL)
+                            .flags(0)
+                            .stage(VK_SHADER_STAGE_COMPUTE_BIT)
+                            .module(computeShader.getShader())
+                            .pName(stack.ASCII("main"))
+                            .pSpecializationInfo(null))
+                    .layout(pipelineLayout)
+                    .basePipelineHandle(VK_NULL_HANDLE)
+                    .basePipelineIndex(-1);
+            long start = System.nanoTime();
+            renderer.chErr(vkCreateComputePipelines(renderer.getDevice(), renderer.getPipelineCache().getPipelineCache(), computePipelineInfo, null, lb));
+            computePipeline = lb.get(0);
+            renderer.getLogger().log(Logger.MessageType.VERBOSE,
+                    String.format("Compute pipeline created in %.2f ms", (System.nanoTime() - start) / 1e6));
+        }
+    }
+
+
+    protected void destroyObjects() {
+        vkDestroyPipeline(renderer.getDevice(), computePipeline, null);
+        renderer.getPipelineRegistry().releaseLayout(layoutKey,
+                layout -> vkDestroyPipelineLayout(renderer.getDevice(), layout, null));
+        renderer.getPipelineRegistry().releaseLayoutKey(layoutKey);
+    }
+
+    public void destroy() {
+        destroyObjects();
+        renderer.removeComputePipeline(this);
+    }
+
+    protected long getPipeline() {
+        return computePipeline;
+    }
+
+    protected long getPipelineLayout() {
+        return pipelineLayout;
+    }
+}
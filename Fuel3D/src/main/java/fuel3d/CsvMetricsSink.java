@@ -0,0 +1,48 @@
+package fuel3d;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+public class CsvMetricsSink implements FrameMetrics.Sink { // One row per phase and export interval
+    private final BufferedWriter writer;
+    private final long startTime = System.nanoTime();
+
+    public CsvMetricsSink(Path path) throws IOException {
+        Path directory = path.toAbsolutePath().getParent();
+        if (directory != null) Files.createDirectories(directory);
+        writer = Files.newBufferedWriter(path);
+        writer.write("time_s,frame,phase,count,min_ms,mean_ms,p50_ms,p99_ms,p99.9_ms,max_ms");
+        writer.newLine();
+    }
+
+    @Override
+    public void export(FrameMetrics.Snapshot snapshot) {
+        double elapsedSeconds = (System.nanoTime() - startTime) / 1e9;
+        try {
+            for (FrameMetrics.PhaseSummary phase : snapshot.phases()) {
+                writer.write(String.format(Locale.ROOT, "%.3f,%d,%s,%d,%.4f,%.4f,%.4f,%.4f,%.4f,%.4f",
+                        elapsedSeconds, snapshot.frameNumber(), phase.phase(), phase.count(), phase.minMillis(),
+                        phase.meanMillis(), phase.p50Millis(), phase.p99Millis(), phase.p999Millis(), phase.maxMillis()));
+                writer.newLine();
+            }
+            writer.flush();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            writer.close();
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK11.VK_ERROR_OUT_OF_POOL_MEMORY;
+
+// Descriptor sets that live for one frame. Each frame slot grows its own list of pools, which are reset
+// wholesale when the slot comes around again instead of freeing sets one by one.
+public class DescriptorAllocator {
+    private final Fuel3D renderer;
+    private final List<List<Long>> framePools = new ArrayList<>(); // Per frame slot, in allocation order
+    private final int[] currentPool; // Per frame slot, index into its pool list
+    private final int setsPerPool;
+    private final Map<Object, SetLayout> setLayouts = new HashMap<>(); // Referenced from the PipelineRegistry until destroy
+    private int frameIndex = 0;
+    private int poolCount = 0;
+
+    // Descriptors of each type per set a pool has room for, sets of most layouts need fewer
+    private static final int DESCRIPTORS_PER_SET = 4;
+
+    protected DescriptorAllocator(int frameCount, int setsPerPool, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.setsPerPool = setsPerPool;
+        currentPool = new int[frameCount];
+        for (int frame = 0; frame < frameCount; frame++) {
+            framePools.add(new ArrayList<>());
+        }
+    }
+
+    protected synchronized void beginFrame(int frame) { // The frame that last used this slot has finished on the GPU
+        frameIndex = frame;
+        for (long pool : framePools.get(frame)) {
+            vkResetDescriptorPool(renderer.getDevice(), pool, 0);
+        }
+        currentPool[frame] = 0;
+    }
+
+    // Thread safe, so ThreadRecorders can allocate too. The set must not be used after this frame
+    public synchronized DescriptorSet allocate(DescriptorLayout layout) {
+        if (layout.isUpdateAfterBind()) renderer.getLogger().error("Update after bind layouts are allocated by BindlessTable");
+        long setLayout = setLayouts.computeIfAbsent(layout.stateKey(), key -> new SetLayout(key,
+                renderer.getPipelineRegistry().acquireSetLayout(layout))).handle();
+
+        List<Long> pools = framePools.get(frameIndex);
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+            VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .pSetLayouts(stack.longs(setLayout));
+
+            while (true) {
+                boolean freshPool = currentPool[frameIndex] == pools.size();
+                if (freshPool) pools.add(createPool(layout));
+                allocateInfo.descriptorPool(pools.get(currentPool[frameIndex]));
+                int result = vkAllocateDescriptorSets(renderer.getDevice(), allocateInfo, lb);
+                if (result != VK_ERROR_OUT_OF_POOL_MEMORY && result != VK_ERROR_FRAGMENTED_POOL) {
+                    renderer.chErr(result);
+                    return new DescriptorSet(lb.get(0), layout, renderer);
+                }
+                if (freshPool) // Another pool would not have more room
+                    renderer.getLogger().error("Descriptor set does not fit into a new descriptor pool");
+                currentPool[frameIndex]++; // Full, move on to the next pool of this frame
+            }
+        }
+    }
+
+    private long createPool(DescriptorLayout layout) { // Always has room for at least one set of layout, even with large arrays
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            DescriptorLayout.DescriptorType[] types = DescriptorLayout.DescriptorType.values();
+            VkDescriptorPoolSize.Buffer poolSizes = VkDescriptorPoolSize.malloc(types.length, stack);
+            for (int i = 0; i < types.length; i++) {
+                DescriptorLayout.DescriptorType type = types[i];
+                int layoutCount = layout.getBindings().stream()
+                        .filter(binding -> binding.type() == type)
+                        .mapToInt(DescriptorLayout.Binding::count)
+                        .sum();
+                poolSizes.get(i)
+                        .type(type.getType())
+                        .descriptorCount(Math.max(setsPerPool * DESCRIPTORS_PER_SET, layoutCount));
+            }
+            VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .maxSets(setsPerPool)
+                    .pPoolSizes(poolSizes);
+            renderer.chErr(vkCreateDescriptorPool(renderer.getDevice(), poolInfo, null, lb));
+            poolCount++;
+            renderer.getLogger().log(Logger.MessageType.VERBOSE, "Descriptor pool " + poolCount + " created");
+            return lb.get(0);
+        }
+    }
+
+    protected synchronized void destroy() { // The device is idle at this point
+        for (List<Long> pools : framePools) {
+            for (long pool : pools) {
+                vkDestroyDescriptorPool(renderer.getDevice(), pool, null);
+            }
+            pools.clear();
+        }
+        for (SetLayout setLayout : setLayouts.values()) {
+            renderer.getPipelineRegistry().releaseSetLayout(setLayout.key());
+        }
+        setLayouts.clear();
+    }
+
+    public synchronized int getPoolCount() {
+        return poolCount;
+    }
+
+    private record SetLayout(Object key, long handle) { }
+}
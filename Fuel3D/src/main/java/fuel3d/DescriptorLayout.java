@@ -0,0 +1,114 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBinding;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutBindingFlagsCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorSetLayoutCreateInfo;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.*;
+
+// Describes the bindings of one descriptor set, pipelines with equal layouts share one VkDescriptorSetLayout through PipelineRegistry
+public class DescriptorLayout {
+    private final List<Binding> bindings = new ArrayList<>();
+    private boolean updateAfterBind = false;
+
+    public static final int VERTEX = VK_SHADER_STAGE_VERTEX_BIT, FRAGMENT = VK_SHADER_STAGE_FRAGMENT_BIT,
+            COMPUTE = VK_SHADER_STAGE_COMPUTE_BIT, ALL_GRAPHICS = VK_SHADER_STAGE_ALL_GRAPHICS, ALL = VK_SHADER_STAGE_ALL;
+
+    public DescriptorLayout binding(int binding, DescriptorType type, int stages) {
+        return array(binding, type, 1, stages);
+    }
+
+    public DescriptorLayout array(int binding, DescriptorType type, int count, int stages) {
+        bindings.add(new Binding(binding, type, count, stages));
+        return this;
+    }
+
+    // Bindless: every binding may be partially bound and written while sets using it are in flight, needs descriptor indexing
+    public DescriptorLayout updateAfterBind() {
+        updateAfterBind = true;
+        return this;
+    }
+
+    protected Object stateKey() { // Immutable snapshot for the set layout cache and pipeline deduplication
+        return List.of(List.copyOf(bindings), updateAfterBind);
+    }
+
+    protected long createSetLayout(Fuel3D renderer) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkDescriptorSetLayoutBinding.Buffer layoutBindings = VkDescriptorSetLayoutBinding.malloc(bindings.size(), stack);
+            IntBuffer bindingFlags = stack.mallocInt(bindings.size());
+            for (int i = 0; i < bindings.size(); i++) {
+                Binding binding = bindings.get(i);
+                layoutBindings.get(i)
+                        .binding(binding.binding)
+                        .descriptorType(binding.type.getType())
+                        .descriptorCount(binding.count)
+                        .stageFlags(binding.stages)
+                        .pImmutableSamplers(null);
+                bindingFlags.put(i, VK_DESCRIPTOR_BINDING_PARTIALLY_BOUND_BIT | VK_DESCRIPTOR_BINDING_UPDATE_AFTER_BIND_BIT
+                        | VK_DESCRIPTOR_BINDING_UPDATE_UNUSED_WHILE_PENDING_BIT);
+            }
+            VkDescriptorSetLayoutBindingFlagsCreateInfo bindingFlagsInfo = VkDescriptorSetLayoutBindingFlagsCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .pBindingFlags(bindingFlags);
+            VkDescriptorSetLayoutCreateInfo setLayoutInfo = VkDescriptorSetLayoutCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(updateAfterBind ? bindingFlagsInfo.address() : NULL)
+                    .flags(updateAfterBind ? VK_DESCRIPTOR_SET_LAYOUT_CREATE_UPDATE_AFTER_BIND_POOL_BIT : 0)
+                    .pBindings(layoutBindings);
+            renderer.chErr(vkCreateDescriptorSetLayout(renderer.getDevice(), setLayoutInfo, null, lb));
+            return lb.get(0);
+        }
+    }
+
+    protected DescriptorType getType(int binding) {
+        for (Binding b : bindings) {
+            if (b.binding == binding) return b.type;
+        }
+        return null;
+    }
+
+    protected List<Binding> getBindings() {
+        return bindings;
+    }
+
+    protected boolean isUpdateAfterBind() {
+        return updateAfterBind;
+    }
+
+    protected record Binding(int binding, DescriptorType type, int count, int stages) { }
+
+    public enum DescriptorType {
+        UNIFORM_BUFFER(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER),
+        UNIFORM_BUFFER_DYNAMIC(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC), // Offset given when binding, see CmdRecorder.bindDescriptorSet
+        STORAGE_BUFFER(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER),
+        STORAGE_BUFFER_DYNAMIC(VK_DESCRIPTOR_TYPE_STORAGE_BUFFER_DYNAMIC),
+        SAMPLED_IMAGE(VK_DESCRIPTOR_TYPE_COMBINED_IMAGE_SAMPLER), // sampler2D
+        STORAGE_IMAGE(VK_DESCRIPTOR_TYPE_STORAGE_IMAGE);
+
+        private final int type;
+
+        DescriptorType(int type) {
+            this.type = type;
+        }
+
+        protected int getType() {
+            return type;
+        }
+
+        protected boolean isBuffer() {
+            return this != SAMPLED_IMAGE && this != STORAGE_IMAGE;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorBufferInfo;
+import org.lwjgl.vulkan.VkDescriptorImageInfo;
+import org.lwjgl.vulkan.VkWriteDescriptorSet;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+// A VkDescriptorSet and its DescriptorLayout, from DescriptorAllocator (valid for one frame) or a BindlessTable
+public class DescriptorSet {
+    private final Fuel3D renderer;
+    private final long set;
+    private final DescriptorLayout layout;
+
+    protected DescriptorSet(long set, DescriptorLayout layout, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.set = set;
+        this.layout = layout;
+    }
+
+    public DescriptorSet buffer(int binding, Buffer buffer) {
+        return buffer(binding, 0, buffer, 0, VK_WHOLE_SIZE);
+    }
+
+    // For dynamic buffers offset is the base the dynamic offset is added to, and range what one draw sees
+    public DescriptorSet buffer(int binding, int arrayElement, Buffer buffer, long offset, long range) {
+        DescriptorLayout.DescriptorType type = typeOf(binding);
+        if (!type.isBuffer()) renderer.getLogger().error("Binding " + binding + " is not a buffer binding");
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkDescriptorBufferInfo.Buffer bufferInfo = VkDescriptorBufferInfo.malloc(1, stack)
+                    .buffer(buffer.getBuffer())
+                    .offset(offset)
+                    .range(range);
+            VkWriteDescriptorSet.Buffer write = VkWriteDescriptorSet.calloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .dstSet(set)
+                    .dstBinding(binding)
+                    .dstArrayElement(arrayElement)
+                    .descriptorCount(1)
+                    .descriptorType(type.getType())
+                    .pBufferInfo(bufferInfo);
+            vkUpdateDescriptorSets(renderer.getDevice(), write, null);
+        }
+        return this;
+    }
+
+    public DescriptorSet image(int binding, Image image, Sampler sampler) {
+        return image(binding, 0, image, sampler);
+    }
+
+    public DescriptorSet texture(int binding, Texture texture) { // Only once texture.isReady()
+        return image(binding, 0, texture.getImage(), texture.getSampler());
+    }
+
+    // SAMPLED_IMAGE expects SHADER_READ_ONLY_OPTIMAL and STORAGE_IMAGE GENERAL layout, sampler is ignored for storage images
+    public DescriptorSet image(int binding, int arrayElement, Image image, Sampler sampler) {
+        DescriptorLayout.DescriptorType type = typeOf(binding);
+        if (type.isBuffer()) renderer.getLogger().error("Binding " + binding + " is not an image binding");
+        boolean sampled = type == DescriptorLayout.DescriptorType.SAMPLED_IMAGE;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkDescriptorImageInfo.Buffer imageInfo = VkDescriptorImageInfo.malloc(1, stack)
+                    .sampler(sampled ? sampler.getSampler() : VK_NULL_HANDLE)
+                    .imageView(image.getImageView())
+                    .imageLayout(sampled ? VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL : VK_IMAGE_LAYOUT_GENERAL);
+            VkWriteDescriptorSet.Buffer write = VkWriteDescriptorSet.calloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .dstSet(set)
+                    .dstBinding(binding)
+                    .dstArrayElement(arrayElement)
+                    .descriptorCount(1)
+                    .descriptorType(type.getType())
+                    .pImageInfo(imageInfo);
+            vkUpdateDescriptorSets(renderer.getDevice(), write, null);
+        }
+        return this;
+    }
+
+    private DescriptorLayout.DescriptorType typeOf(int binding) {
+        DescriptorLayout.DescriptorType type = layout.getType(binding);
+        if (type == null) renderer.getLogger().error("Descriptor layout has no binding " + binding);
+        return type;
+    }
+
+    protected long getSet() {
+        return set;
+    }
+
+    public DescriptorLayout getLayout() {
+        return layout;
+    }
+}
@@ -0,0 +1,241 @@
+package fuel3d;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK12.*;
+
+// A queue with its own command pool and timeline semaphore, submissions are thread safe and return the timeline value they signal
+public class DeviceQueue {
+    private final Fuel3D renderer;
+    private final String name;
+    private final int family;
+    private final VkQueue queue;
+    private final Object submitLock; // Shared with Fuel3D's frame submission if this is the graphics VkQueue
+    private long commandPool, timeline;
+    private long submittedValue = 0;
+    private final ArrayDeque<InFlight> inFlight = new ArrayDeque<>(); // In submission order, so completed ones are at the front
+
+    protected DeviceQueue(String name, int family, VkQueue queue, Object submitLock, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.name = name;
+        this.family = family;
+        this.queue = queue;
+        this.submitLock = submitLock;
+
+        create();
+    }
+
+    protected void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkCommandPoolCreateInfo commandPoolInfo = VkCommandPoolCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT)
+                    .queueFamilyIndex(family);
+            renderer.chErr(vkCreateCommandPool(renderer.getDevice(), commandPoolInfo, null, lb));
+            commandPool = lb.get(0);
+
+            VkSemaphoreTypeCreateInfo timelineInfo = VkSemaphoreTypeCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .semaphoreType(VK_SEMAPHORE_TYPE_TIMELINE)
+                    .initialValue(0);
+            VkSemaphoreCreateInfo semaphoreInfo = VkSemaphoreCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(timelineInfo.address())
+                    .flags(0);
+            renderer.chErr(vkCreateSemaphore(renderer.getDevice(), semaphoreInfo, null, lb));
+            timeline = lb.get(0);
+        }
+    }
+
+    public long submit(Consumer<VkCommandBuffer> commands, Wait... waits) {
+        return submit(commands, null, waits);
+    }
+
+    // onComplete runs on a later submit, poll or destroy once the GPU has finished, for example to free staging buffers
+    public long submit(Consumer<VkCommandBuffer> commands, Runnable onComplete, Wait... waits) {
+        synchronized (submitLock) {
+            reclaim(getCompletedValue());
+
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                PointerBuffer pb = stack.mallocPointer(1);
+
+                VkCommandBufferAllocateInfo commandBufferInfo = VkCommandBufferAllocateInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(NULL)
+                        .commandPool(commandPool)
+                        .level(VK_COMMAND_BUFFER_LEVEL_PRIMARY)
+                        .commandBufferCount(1);
+                renderer.chErr(vkAllocateCommandBuffers(renderer.getDevice(), commandBufferInfo, pb));
+                VkCommandBuffer commandBuffer = new VkCommandBuffer(pb.get(0), renderer.getDevice());
+
+                VkCommandBufferBeginInfo commandBufferBeginInfo = VkCommandBufferBeginInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(NULL)
+                        .flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT)
+                        .pInheritanceInfo(null);
+                renderer.chErr(vkBeginCommandBuffer(commandBuffer, commandBufferBeginInfo));
+                commands.accept(commandBuffer);
+                renderer.chErr(vkEndCommandBuffer(commandBuffer));
+
+                LongBuffer waitSemaphores = stack.mallocLong(waits.length);
+                LongBuffer waitValues = stack.mallocLong(waits.length);
+                IntBuffer waitStages = stack.mallocInt(waits.length);
+                for (Wait wait : waits) {
+                    waitSemaphores.put(wait.semaphore());
+                    waitValues.put(wait.value());
+                    waitStages.put(wait.stageMask());
+                }
+                waitSemaphores.flip();
+                waitValues.flip();
+                waitStages.flip();
+
+                long value = submittedValue + 1;
+                VkTimelineSemaphoreSubmitInfo timelineSubmitInfo = VkTimelineSemaphoreSubmitInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(NULL)
+                        .waitSemaphoreValueCount(waits.length)
+                        .pWaitSemaphoreValues(waitValues)
+                        .signalSemaphoreValueCount(1)
+                        .pSignalSemaphoreValues(stack.longs(value));
+                VkSubmitInfo submitInfo = VkSubmitInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(timelineSubmitInfo.address())
+                        .waitSemaphoreCount(waits.length)
+                        .pWaitSemaphores(waitSemaphores)
+                        .pWaitDstStageMask(waitStages)
+                        .pCommandBuffers(pb)
+                        .pSignalSemaphores(stack.longs(timeline));
+                renderer.chErr(vkQueueSubmit(queue, submitInfo, VK_NULL_HANDLE));
+
+                submittedValue = value;
+                inFlight.add(new InFlight(value, commandBuffer, onComplete));
+                return value;
+            }
+        }
+    }
+
+    public long record(Consumer<CmdRecorder> commands, Wait... waits) { // Async compute, bind a ComputePipeline and dispatch
+        return submit(commandBuffer -> {
+            CmdRecorder recorder = new CmdRecorder();
+            recorder.startCommands(commandBuffer);
+            commands.accept(recorder);
+        }, waits);
+    }
+
+    public void poll() { // Frees finished command buffers and runs their onComplete callbacks
+        synchronized (submitLock) {
+            if (!inFlight.isEmpty()) reclaim(getCompletedValue());
+        }
+    }
+
+    private void reclaim(long completedValue) {
+        while (!inFlight.isEmpty() && inFlight.peek().value() <= completedValue) {
+            InFlight finished = inFlight.poll();
+            vkFreeCommandBuffers(renderer.getDevice(), commandPool, finished.commandBuffer());
+            if (finished.onComplete() != null) finished.onComplete().run();
+        }
+    }
+
+    public void waitFor(long value) { // Blocks the calling thread
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkSemaphoreWaitInfo waitInfo = VkSemaphoreWaitInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .semaphoreCount(1)
+                    .pSemaphores(stack.longs(timeline))
+                    .pValues(stack.longs(value));
+            renderer.chErr(vkWaitSemaphores(renderer.getDevice(), waitInfo, Long.MAX_VALUE));
+        }
+    }
+
+    public long getCompletedValue() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+            renderer.chErr(vkGetSemaphoreCounterValue(renderer.getDevice(), timeline, lb));
+            return lb.get(0);
+        }
+    }
+
+    public boolean isComplete(long value) {
+        return getCompletedValue() >= value;
+    }
+
+    public Wait waitOn(long value, int dstStageMask) { // For a submission on another queue that has to run after this value
+        return new Wait(timeline, value, dstStageMask);
+    }
+
+    // Queue family ownership transfer of an exclusive buffer: record release on the source queue, then acquire on the
+    // destination queue in a submission that waits on the release. Nothing is needed within the same family.
+    public static void releaseBuffer(VkCommandBuffer commandBuffer, Buffer buffer, int srcFamily, int dstFamily,
+                                     int srcStageMask, int srcAccessMask) {
+        if (srcFamily == dstFamily) return;
+        ownershipBarrier(commandBuffer, buffer, srcFamily, dstFamily, srcStageMask, srcAccessMask,
+                VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0);
+    }
+
+    public static void acquireBuffer(VkCommandBuffer commandBuffer, Buffer buffer, int srcFamily, int dstFamily,
+                                     int dstStageMask, int dstAccessMask) {
+        if (srcFamily == dstFamily) return;
+        ownershipBarrier(commandBuffer, buffer, srcFamily, dstFamily, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, 0,
+                dstStageMask, dstAccessMask);
+    }
+
+    private static void ownershipBarrier(VkCommandBuffer commandBuffer, Buffer buffer, int srcFamily, int dstFamily,
+                                         int srcStageMask, int srcAccessMask, int dstStageMask, int dstAccessMask) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkBufferMemoryBarrier.Buffer barrier = VkBufferMemoryBarrier.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .srcAccessMask(srcAccessMask)
+                    .dstAccessMask(dstAccessMask)
+                    .srcQueueFamilyIndex(srcFamily)
+                    .dstQueueFamilyIndex(dstFamily)
+                    .buffer(buffer.getBuffer())
+                    .offset(0)
+                    .size(VK_WHOLE_SIZE);
+            vkCmdPipelineBarrier(commandBuffer, srcStageMask, dstStageMask, 0, null, barrier, null);
+        }
+    }
+
+    protected void destroy() { // The device is idle at this point
+        synchronized (submitLock) {
+            reclaim(Long.MAX_VALUE);
+            vkDestroyCommandPool(renderer.getDevice(), commandPool, null);
+            vkDestroySemaphore(renderer.getDevice(), timeline, null);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getFamily() {
+        return family;
+    }
+
+    protected VkQueue getQueue() {
+        return queue;
+    }
+
+    protected long getTimeline() {
+        return timeline;
+    }
+
+    public record Wait(long semaphore, long value, int stageMask) { }
+
+    private record InFlight(long value, VkCommandBuffer commandBuffer, Runnable onComplete) { }
+}
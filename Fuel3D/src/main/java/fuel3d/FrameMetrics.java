@@ -0,0 +1,107 @@
+package fuel3d;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameMetrics { // CPU time of each frame phase, recorded on the render thread without allocating
+    private final Histogram[] totals = new Histogram[Phase.values().length]; // Since start
+    private final Histogram[] intervals = new Histogram[Phase.values().length]; // Since the last export
+    private final List<Sink> sinks = new ArrayList<>();
+    private final long exportInterval; // Nanoseconds, 0 to only export on destroy
+    private long intervalStart;
+    private long lastFrameStart = -1;
+    private long frameNumber = 0;
+
+    protected FrameMetrics(long exportInterval) {
+        this.exportInterval = exportInterval;
+        for (int i = 0; i < totals.length; i++) {
+            totals[i] = new Histogram();
+            intervals[i] = new Histogram();
+        }
+        intervalStart = System.nanoTime();
+    }
+
+    protected void record(Phase phase, long nanos) {
+        totals[phase.ordinal()].record(nanos);
+        intervals[phase.ordinal()].record(nanos);
+    }
+
+    protected void frameStarted(long now, long frameNumber) { // Records FRAME as the time since the previous frame started
+        this.frameNumber = frameNumber;
+        if (lastFrameStart >= 0) record(Phase.FRAME, now - lastFrameStart);
+        lastFrameStart = now;
+
+        if (exportInterval > 0 && now - intervalStart >= exportInterval) export(now);
+    }
+
+    private void export(long now) {
+        if (!sinks.isEmpty()) {
+            List<PhaseSummary> phases = new ArrayList<>(intervals.length);
+            for (Phase phase : Phase.values()) {
+                phases.add(summarize(phase, intervals[phase.ordinal()]));
+            }
+            Snapshot snapshot = new Snapshot(frameNumber, now - intervalStart, List.copyOf(phases));
+            for (Sink sink : sinks) {
+                sink.export(snapshot);
+            }
+        }
+        for (Histogram interval : intervals) {
+            interval.reset();
+        }
+        intervalStart = now;
+    }
+
+    private static PhaseSummary summarize(Phase phase, Histogram histogram) {
+        return new PhaseSummary(phase, histogram.getTotalCount(), histogram.getMin() / 1e6, histogram.getMean() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMax() / 1e6);
+    }
+
+    public void addSink(Sink sink) {
+        sinks.add(sink);
+    }
+
+    public void removeSink(Sink sink) {
+        sinks.remove(sink);
+    }
+
+    public Histogram getHistogram(Phase phase) { // All frames since start, read it on the render thread
+        return totals[phase.ordinal()];
+    }
+
+    public double getPercentileMillis(Phase phase, double percentile) {
+        return totals[phase.ordinal()].getValueAtPercentile(percentile) / 1e6;
+    }
+
+    public PhaseSummary getSummary(Phase phase) {
+        return summarize(phase, totals[phase.ordinal()]);
+    }
+
+    protected void destroy() { // Exports what is left of the last interval
+        if (intervals[Phase.FRAME.ordinal()].getTotalCount() > 0) export(System.nanoTime());
+        for (Sink sink : sinks) {
+            sink.close();
+        }
+        sinks.clear();
+    }
+
+    public enum Phase {
+        POLL_EVENTS, // Window.pollEvents
+        FRAME_WAIT, // nextFrame blocked on the GPU finishing the frame slot
+        RECORD, // End of nextFrame to the end of endFrame
+        SUBMIT, // enqueueFrame, queue submit and present
+        FRAME // Start of one nextFrame to the start of the next
+    }
+
+    public record PhaseSummary(Phase phase, long count, double minMillis, double meanMillis, double p50Millis,
+                               double p99Millis, double p999Millis, double maxMillis) { }
+
+    public record Snapshot(long frameNumber, long intervalNanos, List<PhaseSummary> phases) { }
+
+    public interface Sink extends AutoCloseable { // Called on the render thread once per export interval
+        void export(Snapshot snapshot);
+
+        @Override
+        default void close() { }
+    }
+}
@@ -0,0 +1,188 @@
+package fuel3d;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.vulkan.*;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.KHRSwapchain.vkQueuePresentKHR;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Submit and present structs of one frame slot, built once and refilled every frame so enqueueFrame makes no garbage
+class FrameSubmission {
+    private final VkSubmitInfo submitInfo = VkSubmitInfo.calloc();
+    private final VkTimelineSemaphoreSubmitInfo timelineSubmitInfo = VkTimelineSemaphoreSubmitInfo.calloc();
+    private final VkPresentInfoKHR presentInfo = VkPresentInfoKHR.calloc();
+    private final PointerBuffer commandBuffers = memAllocPointer(1);
+    private final LongBuffer signalSemaphores = memAllocLong(2); // Frame timeline, frame finished
+    private final LongBuffer signalValues = memAllocLong(2); // Binary semaphore values are ignored
+    private final LongBuffer presentWaitSemaphores = memAllocLong(1);
+
+    // Image acquisition semaphores of presented windows, and timeline waits on other queues
+    private LongBuffer waitSemaphores, waitValues;
+    private IntBuffer waitStages;
+    private int waitCapacity = 0, waitCount = 0;
+
+    // Per presented window, grown with ensureCapacity
+    private LongBuffer swapchains;
+    private IntBuffer imageIndices, results;
+    private WindowFramebuffer[] presented;
+    private int capacity = 0, presentCount = 0;
+
+    FrameSubmission(VkCommandBuffer commandBuffer, long frameTimeline, long frameFinishedSemaphore) {
+        this(commandBuffer.address(), frameTimeline, frameFinishedSemaphore);
+    }
+
+    FrameSubmission(long commandBuffer, long frameTimeline, long frameFinishedSemaphore) {
+        commandBuffers.put(0, commandBuffer);
+        signalSemaphores.put(0, frameTimeline).put(1, frameFinishedSemaphore);
+        signalValues.put(1, 0);
+        presentWaitSemaphores.put(0, frameFinishedSemaphore);
+
+        timelineSubmitInfo
+                .sType$Default()
+                .pNext(NULL);
+        submitInfo
+                .sType$Default()
+                .pNext(timelineSubmitInfo.address())
+                .pCommandBuffers(commandBuffers);
+        presentInfo
+                .sType$Default()
+                .pNext(NULL)
+                .pWaitSemaphores(presentWaitSemaphores);
+
+        ensureCapacity(1);
+    }
+
+    void ensureCapacity(int windowCount) {
+        ensureWaitCapacity(windowCount + 4); // Some room for queue waits
+        if (windowCount <= capacity) return;
+        freeWindowBuffers();
+        capacity = windowCount;
+        swapchains = memAllocLong(capacity);
+        imageIndices = memAllocInt(capacity);
+        results = memAllocInt(capacity);
+        presented = new WindowFramebuffer[capacity];
+    }
+
+    private void ensureWaitCapacity(int count) {
+        if (count <= waitCapacity) return;
+        waitSemaphores = memRealloc(waitSemaphores, count);
+        waitValues = memRealloc(waitValues, count);
+        waitStages = memRealloc(waitStages, count);
+        waitCapacity = count;
+    }
+
+    void reset() { // At the start of the frame, waits can be added while it is recorded
+        for (int i = 0; i < presentCount; i++) {
+            presented[i] = null;
+        }
+        presentCount = 0;
+        waitCount = 0;
+        // The previous submit and present limited these to their counts, the slot may need more of them this frame
+        waitSemaphores.clear();
+        waitValues.clear();
+        waitStages.clear();
+        swapchains.clear();
+        imageIndices.clear();
+        results.clear();
+    }
+
+    void addWait(long semaphore, long value, int stageMask) { // value is ignored for binary semaphores
+        ensureWaitCapacity(waitCount + 1);
+        waitSemaphores.put(waitCount, semaphore);
+        waitValues.put(waitCount, value);
+        waitStages.put(waitCount, stageMask);
+        waitCount++;
+    }
+
+    void addPresent(WindowFramebuffer windowFramebuffer) {
+        addPresent(windowFramebuffer, windowFramebuffer.getImageAcquisitionSemaphore(),
+                windowFramebuffer.getWindow().getSwapchain(), windowFramebuffer.getImageIndex());
+    }
+
+    void addPresent(WindowFramebuffer windowFramebuffer, long imageAcquisitionSemaphore, long swapchain, int imageIndex) {
+        addWait(imageAcquisitionSemaphore, 0, VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT); // TODO: more attachments
+        swapchains.put(presentCount, swapchain);
+        imageIndices.put(presentCount, imageIndex);
+        presented[presentCount] = windowFramebuffer;
+        presentCount++;
+    }
+
+    int submit(VkQueue queue, long frameNumber) {
+        return vkQueueSubmit(queue, prepareSubmit(frameNumber), VK_NULL_HANDLE);
+    }
+
+    VkSubmitInfo prepareSubmit(long frameNumber) { // Points submitInfo at this frame's waits and signals
+
+        int signalCount = presentCount > 0 ? 2 : 1; // Nothing to present when only rendering offscreen
+        signalValues.put(0, frameNumber).limit(signalCount);
+        signalSemaphores.limit(signalCount);
+        waitSemaphores.limit(waitCount);
+        waitValues.limit(waitCount);
+        waitStages.limit(waitCount);
+
+        timelineSubmitInfo
+                .waitSemaphoreValueCount(waitCount)
+                .pWaitSemaphoreValues(waitValues)
+                .signalSemaphoreValueCount(signalCount)
+                .pSignalSemaphoreValues(signalValues);
+        submitInfo
+                .waitSemaphoreCount(waitCount)
+                .pWaitSemaphores(waitSemaphores)
+                .pWaitDstStageMask(waitStages)
+                .pSignalSemaphores(signalSemaphores);
+        return submitInfo;
+    }
+
+    int present(VkQueue queue) { // One vkQueuePresentKHR for every window, per swapchain results in getResult
+        return vkQueuePresentKHR(queue, preparePresent());
+    }
+
+    VkPresentInfoKHR preparePresent() {
+        swapchains.limit(presentCount);
+        imageIndices.limit(presentCount);
+        results.limit(presentCount);
+        presentInfo
+                .pSwapchains(swapchains)
+                .swapchainCount(presentCount)
+                .pImageIndices(imageIndices)
+                .pResults(results);
+        return presentInfo;
+    }
+
+    int getPresentCount() {
+        return presentCount;
+    }
+
+    WindowFramebuffer getPresented(int index) {
+        return presented[index];
+    }
+
+    int getResult(int index) {
+        return results.get(index);
+    }
+
+    private void freeWindowBuffers() {
+        if (capacity == 0) return;
+        memFree(swapchains);
+        memFree(imageIndices);
+        memFree(results);
+    }
+
+    void free() {
+        freeWindowBuffers();
+        memFree(waitSemaphores);
+        memFree(waitValues);
+        memFree(waitStages);
+        submitInfo.free();
+        timelineSubmitInfo.free();
+        presentInfo.free();
+        memFree(commandBuffers);
+        memFree(signalSemaphores);
+        memFree(signalValues);
+        memFree(presentWaitSemaphores);
+    }
+}
@@ -5,6 +5,8 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.VkFramebufferCreateInfo;
 
 import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.lwjgl.system.MemoryUtil.NULL;
 import static org.lwjgl.vulkan.VK10.*;
@@ -12,18 +14,42 @@ import static org.lwjgl.vulkan.VK10.*;
 public class Framebuffer {
     private long framebuffer;
     private final Fuel3D renderer;
-    private final Pipeline targetPipeline;
-    private final Image image;
+    private final long renderPass;
+    private final List<Image> images; // Color attachments in order, the resolve targets when multisampled
+    private final List<Image> multisampledImages; // Rendered to instead of images, empty without multisampling
+    private final Image depthImage; // null without depth attachment
+    private final boolean ownsDepthImage;
 
+    // Creates a depth image if the pipeline tests depth, and a multisampled color image if it uses multisampling
     public Framebuffer(Image image, Pipeline targetPipeline, Fuel3D renderer) {
-        this.image = image; // TODO: multiple image attachments
-        this.targetPipeline = targetPipeline;
+        this.images = List.of(image);
+        this.renderPass = targetPipeline.getRenderpass();
         this.renderer = renderer;
+        int samples = targetPipeline.getSamples();
+        this.multisampledImages = samples == VK_SAMPLE_COUNT_1_BIT ? List.of()
+                : List.of(Image.createTransientAttachment(image.getWidth(), image.getHeight(), image.getImageFormat(),
+                        VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT, samples, renderer));
+        this.depthImage = targetPipeline.getDepthFormat() == VK_FORMAT_UNDEFINED ? null
+                : Image.createTransientAttachment(image.getWidth(), image.getHeight(), targetPipeline.getDepthFormat(),
+                        VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT, samples, renderer);
+        this.ownsDepthImage = true;
         renderer.addFramebuffer(this);
 
         create();
     }
 
+    // Owned by a RenderGraph, not registered
+    protected Framebuffer(List<Image> images, Image depthImage, long renderPass, Fuel3D renderer) {
+        this.images = List.copyOf(images);
+        this.multisampledImages = List.of();
+        this.depthImage = depthImage;
+        this.ownsDepthImage = false;
+        this.renderPass = renderPass;
+        this.renderer = renderer;
+
+        create();
+    }
+
     protected void create() {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             LongBuffer lb = stack.mallocLong(1);
@@ -32,11 +58,10 @@ public class Framebuffer {
                     .sType$Default()
                     .pNext(NULL)
                     .flags(0)
-                    .renderPass(targetPipeline.getRenderpass())
-                    .attachmentCount(1)
-                    .pAttachments(stack.longs(image.getImageView()))
-                    .width(image.getWidth())
-                    .height(image.getHeight())
+                    .renderPass(renderPass)
+                    .pAttachments(stack.longs(getAttachments().stream().mapToLong(Image::getImageView).toArray()))
+                    .width(getImage().getWidth())
+                    .height(getImage().getHeight())
                     .layers(1);
             renderer.chErr(vkCreateFramebuffer(renderer.getDevice(), framebufferInfo, null, lb));
             framebuffer = lb.get(0);
@@ -49,6 +74,8 @@ public class Framebuffer {
 
     public void destroy() {
         destroyObjects();
+        multisampledImages.forEach(Image::destroy);
+        if (ownsDepthImage && depthImage != null) depthImage.destroy();
         renderer.removeFramebuffer(this);
     }
 
@@ -56,8 +83,27 @@ public class Framebuffer {
         return framebuffer;
     }
 
-    protected Image getImage() {
-        return image;
+    protected Image getImage() { // The first attachment, which sets the size
+        return images.isEmpty() ? depthImage : images.get(0);
+    }
+
+    protected List<Image> getImages() {
+        return images;
+    }
+
+    protected Image getDepthImage() {
+        return depthImage;
+    }
+
+    protected int getSamples() {
+        return multisampledImages.isEmpty() ? VK_SAMPLE_COUNT_1_BIT : multisampledImages.get(0).getSamples();
+    }
+
+    private List<Image> getAttachments() { // In render pass order, depth after the colors and the resolve targets last
+        List<Image> attachments = new ArrayList<>(multisampledImages.isEmpty() ? images : multisampledImages);
+        if (depthImage != null) attachments.add(depthImage);
+        if (!multisampledImages.isEmpty()) attachments.addAll(images);
+        return attachments;
     }
 
 }
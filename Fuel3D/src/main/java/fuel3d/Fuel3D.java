@@ -7,14 +7,21 @@ import fuel3d.Window.SurfaceInfo;
 
 import java.nio.IntBuffer;
 import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
 
 import static org.lwjgl.glfw.GLFW.*;
 import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.vulkan.KHRWin32Surface.VK_KHR_WIN32_SURFACE_EXTENSION_NAME;
 import static org.lwjgl.vulkan.VK10.*;
-import static org.lwjgl.vulkan.VK12.VK_API_VERSION_1_2;
+import static org.lwjgl.vulkan.VK11.vkGetPhysicalDeviceFeatures2;
+import static org.lwjgl.vulkan.VK12.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.KHRSurface.*;
 import static org.lwjgl.vulkan.KHRWin32Surface.vkGetPhysicalDeviceWin32PresentationSupportKHR;
@@ -28,8 +35,11 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
     private List<String> deviceNameList;
     private VkDevice device = null;
     private AvailableQueueFamilyIndices queueIndices;
-    private VkQueue graphicsQueue = null; // TODO: separate compute queue
+    private VkQueue graphicsQueue = null;
     private VkQueue presentQueue = null;
+    private final Object graphicsQueueLock = new Object(); // Also guards presentQueue, DeviceQueues may share the VkQueue
+    private DeviceQueue computeQueue, transferQueue; // On the graphics queue if there is no dedicated family
+    private DeviceQueue uploadQueue; // Graphics family, for uploads that need blits
     private List<VkPhysicalDevice> physicalDevices;
     private long debugMessenger;
     private String platform;
@@ -37,9 +47,27 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
 
     private long[] commandPools;
     private VkCommandBuffer[] commandBuffers;
-    private long[] frameAvailableFences;
+    private long frameTimeline; // Timeline semaphore, signaled with the frame number when a frame finishes on the GPU
     private long[] frameFinishedSemaphores;
+    private FrameSubmission[] frameSubmissions; // Prebuilt submit and present info per frame slot
     private int frameIndex = 0;
+    private long frameNumber = 0; // Number of the frame being recorded, the first frame is 1
+    private long lastFrameWaitTime = 0; // Nanoseconds spent in nextFrame waiting for the GPU
+    private long recordStart; // End of nextFrame, for FrameMetrics
+    private final FrameMetrics frameMetrics;
+    private boolean frameRecording = false;
+    private final ArrayDeque<RetiredObject> retiredObjects = new ArrayDeque<>(); // Destroyed once the GPU has finished their last frame
+    private long immediateCommandPool; // For one time submits outside the frame loop
+    private StagingRing stagingRing;
+    private final ShaderCache shaderCache; // null if disabled
+    private final ShaderCompiler shaderCompiler;
+    private final TextureLoader textureLoader;
+    private PipelineCache pipelineCache;
+    private GpuProfiler gpuProfiler; // null if disabled
+    private final boolean gpuProfiling;
+    private final int gpuProfilerScopes, gpuProfilerHistory;
+    private final PipelineRegistry pipelineRegistry = new PipelineRegistry(this);
+    private final Path pipelineCachePath;
 
     private final Debugger debugger;
     private final Logger logger;
@@ -47,24 +75,46 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
     private final List<Window> windows = new ArrayList<>();
     private final List<Shader> shaders = new ArrayList<>();
     private final List<Pipeline> pipelines = new ArrayList<>();
+    private final List<ComputePipeline> computePipelines = new ArrayList<>();
     private final List<Image> images = new ArrayList<>();
+    private final List<Buffer> buffers = new ArrayList<>();
     private final List<Framebuffer> framebuffers = new ArrayList<>();
     private final List<WindowFramebuffer> windowFramebuffers = new ArrayList<>();
+    private final List<ThreadRecorder> threadRecorders = new ArrayList<>();
+    private final List<Sampler> samplers = new ArrayList<>();
+    private final List<BindlessTable> bindlessTables = new ArrayList<>();
+    private final List<UniformRing> uniformRings = new ArrayList<>();
+    private final List<RenderGraph> renderGraphs = new ArrayList<>();
 
-    private final int frameCount = 2; // TODO: Make this enum setting
+    private final int frameCount; // Frames in flight
     private final boolean validate; // 'Debug mode'
+    private final boolean headless; // No window or swapchain, renders only into user created images
     private final String appName, engineName;
     private final Version appVersion, engineVersion;
 
     private final String[] instanceExtensionList = new String[0]; // Empty for now;
-    private final String[] deviceExtensionList = new String[] {
-            VK_KHR_SWAPCHAIN_EXTENSION_NAME
-    };
+    private final String[] deviceExtensionList;
+    private MemoryAllocator memoryAllocator;
+    private boolean drawIndirectCount, multiDrawIndirect, descriptorIndexing; // Optional device features, enabled when available
+    private int depthFormat; // Best supported depth attachment format of the device
+    private int sampleCounts; // VkSampleCountFlags usable for both color and depth framebuffer attachments
+    private DescriptorAllocator descriptorAllocator;
+    private final int descriptorSetsPerPool;
+    private final long memoryBlockSize;
+    private final long stagingBufferSize;
 
     public static final Version VERSION = new Version(1, 0, 0);
     public static final String NAME = "Fuel3D";
 
-    public Fuel3D(Settings settings, Window initWindow) {
+    public Fuel3D(Settings settings) { // Headless mode
+        this(settings, null);
+    }
+
+    public Fuel3D(Settings settings, Window initWindow) { // initWindow = null for headless mode
+        headless = initWindow == null;
+        deviceExtensionList = headless ? new String[0] : new String[] {
+                VK_KHR_SWAPCHAIN_EXTENSION_NAME
+        };
         validate = settings.validate;
         debugger = settings.debugger;
         logger = settings.logger;
@@ -72,6 +122,18 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         appVersion = settings.appVersion;
         engineName = settings.engineName;
         engineVersion = settings.engineVersion;
+        frameCount = Math.max(1, Math.min(4, settings.framesInFlight));
+        memoryBlockSize = settings.memoryBlockSize;
+        stagingBufferSize = settings.stagingBufferSize;
+        shaderCache = settings.shaderCacheDirectory == null ? null : new ShaderCache(settings.shaderCacheDirectory, this);
+        shaderCompiler = new ShaderCompiler(settings.shaderCompilerThreads, this);
+        textureLoader = new TextureLoader(settings.textureLoaderThreads, this);
+        pipelineCachePath = settings.pipelineCachePath;
+        gpuProfiling = settings.gpuProfiling;
+        frameMetrics = new FrameMetrics((long) (settings.frameMetricsExportInterval * 1e9));
+        gpuProfilerScopes = settings.gpuProfilerScopes;
+        gpuProfilerHistory = settings.gpuProfilerHistory;
+        descriptorSetsPerPool = settings.descriptorSetsPerPool;
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
             IntBuffer ib = stack.mallocInt(1);
@@ -125,7 +187,10 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
             // Getting instance extensions
             PointerBuffer reqInstanceExtensions = queryReqInstanceExtensions(stack);
             chErr(vkEnumerateInstanceExtensionProperties((String)null, ib, null));
-            if (ib.get(0) > 0) {
+            if (reqInstanceExtensions.capacity() == 0) {
+                instanceExtensions = reqInstanceExtensions;
+            }
+            else if (ib.get(0) > 0) {
                 VkExtensionProperties.Buffer availableInstanceExtensions = VkExtensionProperties.malloc(ib.get(0), stack);
                 chErr(vkEnumerateInstanceExtensionProperties((String)null, ib, availableInstanceExtensions));
 
@@ -238,6 +303,15 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
             }
             //endregion
 
+            if (headless) {
+                logger.log(MessageType.INFO, "Running in headless mode");
+
+                pickPhysicalDevice(null);
+                createLogicalDevice(null);
+                createCommandBuffers();
+                return;
+            }
+
             // Find surface type (used for determining what function to use for checking physical device queue surface support)
             PointerBuffer glfwReqExtensions = glfwGetRequiredInstanceExtensions();
             if (glfwReqExtensions == null) {
@@ -266,13 +340,34 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
 
     public void destroy() {
         logger.log(MessageType.INFO, "Cleaning up");
+        shaderCompiler.destroy();
+        textureLoader.destroy();
+        if (shaderCache != null) shaderCache.logStatistics();
+        frameMetrics.destroy();
 
         vkDeviceWaitIdle(device);
+        destroyRetired(Long.MAX_VALUE);
+        computeQueue.destroy();
+        if (transferQueue != computeQueue) transferQueue.destroy();
+        uploadQueue.destroy();
+        vkDestroySemaphore(device, frameTimeline, null);
         for (int frame = 0; frame < frameCount; frame++) {
-            vkDestroyFence(device, frameAvailableFences[frame], null);
             vkDestroySemaphore(device, frameFinishedSemaphores[frame], null);
+            frameSubmissions[frame].free();
             vkDestroyCommandPool(device, commandPools[frame], null);
         }
+        vkDestroyCommandPool(device, immediateCommandPool, null);
+        if (gpuProfiler != null) gpuProfiler.destroy();
+
+        for (ThreadRecorder threadRecorder : threadRecorders) {
+            threadRecorder.destroyObjects();
+        }
+        threadRecorders.clear();
+
+        for (RenderGraph renderGraph : renderGraphs) { // Before images, graphs own framebuffers and transient attachments
+            renderGraph.destroyObjects();
+        }
+        renderGraphs.clear();
 
         for (WindowFramebuffer windowFramebuffer: windowFramebuffers) {
             windowFramebuffer.destroyObjects();
@@ -290,11 +385,36 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         }
         images.clear();
 
+        // destroy all buffers
+        for (Buffer buffer : buffers) {
+            buffer.destroyObjects();
+        }
+        buffers.clear();
+
         // destroy all pipelines
         for (Pipeline pipeline : pipelines) {
             pipeline.destroyObjects();
         }
         pipelines.clear();
+        for (ComputePipeline computePipeline : computePipelines) {
+            computePipeline.destroyObjects();
+        }
+        computePipelines.clear();
+
+        for (BindlessTable bindlessTable : bindlessTables) {
+            bindlessTable.destroyObjects();
+        }
+        bindlessTables.clear();
+        for (UniformRing uniformRing : uniformRings) {
+            uniformRing.destroyObjects();
+        }
+        uniformRings.clear();
+        descriptorAllocator.destroy();
+        for (Sampler sampler : samplers) {
+            sampler.destroyObjects();
+        }
+        samplers.clear();
+        pipelineRegistry.destroy();
 
         // destroy all shaders
         for (Shader shader : shaders) {
@@ -308,6 +428,8 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         }
         windows.clear();
 
+        pipelineCache.destroy();
+        memoryAllocator.destroy();
         vkDestroyDevice(device, null);
         if (validate) {
             vkDestroyDebugUtilsMessengerEXT(instance, debugMessenger, null);
@@ -319,10 +441,10 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         try (MemoryStack stack = MemoryStack.stackPush()) {
             LongBuffer lb = stack.mallocLong(1);
             PointerBuffer pb = stack.mallocPointer(1);
-            frameAvailableFences = new long[frameCount];
             frameFinishedSemaphores = new long[frameCount];
             commandPools = new long[frameCount];
             commandBuffers = new VkCommandBuffer[frameCount];
+            frameSubmissions = new FrameSubmission[frameCount];
 
             VkCommandPoolCreateInfo commandPoolInfo = VkCommandPoolCreateInfo.malloc(stack)
                     .sType$Default()
@@ -335,10 +457,15 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
                     .sType$Default()
                     .pNext(NULL)
                     .flags(0);
-            VkFenceCreateInfo fenceInfo = VkFenceCreateInfo.malloc(stack)
+            VkSemaphoreTypeCreateInfo timelineInfo = VkSemaphoreTypeCreateInfo.malloc(stack)
                     .sType$Default()
                     .pNext(NULL)
-                    .flags(VK_FENCE_CREATE_SIGNALED_BIT);
+                    .semaphoreType(VK_SEMAPHORE_TYPE_TIMELINE)
+                    .initialValue(0);
+            chErr(vkCreateSemaphore(device, semaphoreInfo.pNext(timelineInfo.address()), null, lb));
+            frameTimeline = lb.get(0);
+            semaphoreInfo.pNext(NULL);
+
             for (int frame = 0; frame < frameCount; frame++) {
                 chErr(vkCreateCommandPool(device, commandPoolInfo, null, lb));
                 commandPools[frame] = lb.get(0);
@@ -351,37 +478,73 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
                 chErr(vkAllocateCommandBuffers(device, commandBufferInfo, pb));
                 commandBuffers[frame] = new VkCommandBuffer(pb.get(0), device);
 
-                chErr(vkCreateFence(device, fenceInfo, null, lb));
-                frameAvailableFences[frame] = lb.get(0);
                 chErr(vkCreateSemaphore(device, semaphoreInfo, null, lb));
                 frameFinishedSemaphores[frame] = lb.get(0);
+                frameSubmissions[frame] = new FrameSubmission(commandBuffers[frame], frameTimeline, frameFinishedSemaphores[frame]);
             }
 
-            cmdRecorder = new CmdRecorder();
+            commandPoolInfo.flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT);
+            chErr(vkCreateCommandPool(device, commandPoolInfo, null, lb));
+            immediateCommandPool = lb.get(0);
+
+            gpuProfiler = gpuProfiling ? new GpuProfiler(frameCount, gpuProfilerScopes, gpuProfilerHistory, this) : null;
+            cmdRecorder = new CmdRecorder(gpuProfiler);
+            stagingRing = new StagingRing(stagingBufferSize, frameCount, this);
+            descriptorAllocator = new DescriptorAllocator(frameCount, descriptorSetsPerPool, this);
         }
     }
 
-    private void createLogicalDevice(Window testWindow) { // Also sets graphicsQueue
+    private void createLogicalDevice(Window testWindow) { // Also sets graphicsQueue, testWindow = null for headless mode
         try (MemoryStack stack = MemoryStack.stackPush()) {
             queueIndices = queryQueueFamilyIndices(stack, physicalDevice, testWindow);
-
-            VkDeviceQueueCreateInfo.Buffer deviceQueueInfo = VkDeviceQueueCreateInfo.malloc(queueIndices.graphics == queueIndices.present ? 1 : 2, stack);
-            (deviceQueueInfo.get(0))
-                    .sType$Default()
-                    .pNext(NULL)
-                    .flags(0)
-                    .queueFamilyIndex(queueIndices.graphics)
-                    .pQueuePriorities(stack.floats(1.0f));
-            if (queueIndices.graphics != queueIndices.present) {
-                (deviceQueueInfo.get(1))
+            int[] queueFamilies = IntStream.of(queueIndices.graphics, queueIndices.present, queueIndices.compute, queueIndices.transfer)
+                    .filter(family -> family >= 0)
+                    .distinct()
+                    .toArray();
+
+            VkDeviceQueueCreateInfo.Buffer deviceQueueInfo = VkDeviceQueueCreateInfo.malloc(queueFamilies.length, stack);
+            for (int i = 0; i < queueFamilies.length; i++) {
+                (deviceQueueInfo.get(i))
                         .sType$Default()
                         .pNext(NULL)
                         .flags(0)
-                        .queueFamilyIndex(queueIndices.present)
+                        .queueFamilyIndex(queueFamilies[i])
                         .pQueuePriorities(stack.floats(1.0f));
             }
 
-            VkPhysicalDeviceFeatures physicalDeviceFeatures = VkPhysicalDeviceFeatures.calloc(stack);
+            VkPhysicalDeviceVulkan12Features supported12Features = VkPhysicalDeviceVulkan12Features.calloc(stack)
+                    .sType$Default();
+            VkPhysicalDeviceFeatures2 supportedFeatures = VkPhysicalDeviceFeatures2.calloc(stack)
+                    .sType$Default()
+                    .pNext(supported12Features.address());
+            vkGetPhysicalDeviceFeatures2(physicalDevice, supportedFeatures);
+            drawIndirectCount = supported12Features.drawIndirectCount();
+            multiDrawIndirect = supportedFeatures.features().multiDrawIndirect();
+            descriptorIndexing = supported12Features.runtimeDescriptorArray() // What BindlessTable relies on
+                    && supported12Features.descriptorBindingPartiallyBound()
+                    && supported12Features.descriptorBindingUpdateUnusedWhilePending()
+                    && supported12Features.descriptorBindingSampledImageUpdateAfterBind()
+                    && supported12Features.descriptorBindingStorageBufferUpdateAfterBind()
+                    && supported12Features.shaderSampledImageArrayNonUniformIndexing();
+
+            VkPhysicalDeviceFeatures physicalDeviceFeatures = VkPhysicalDeviceFeatures.calloc(stack)
+                    .multiDrawIndirect(multiDrawIndirect)
+                    .drawIndirectFirstInstance(supportedFeatures.features().drawIndirectFirstInstance()); // For InstanceStream offsets
+            VkPhysicalDeviceVulkan12Features vulkan12Features = VkPhysicalDeviceVulkan12Features.calloc(stack)
+                    .sType$Default()
+                    .timelineSemaphore(true)
+                    .drawIndirectCount(drawIndirectCount)
+                    .runtimeDescriptorArray(descriptorIndexing)
+                    .descriptorBindingPartiallyBound(descriptorIndexing)
+                    .descriptorBindingUpdateUnusedWhilePending(descriptorIndexing)
+                    .descriptorBindingSampledImageUpdateAfterBind(descriptorIndexing)
+                    .descriptorBindingStorageBufferUpdateAfterBind(descriptorIndexing)
+                    .shaderSampledImageArrayNonUniformIndexing(descriptorIndexing)
+                    .shaderStorageBufferArrayNonUniformIndexing(descriptorIndexing
+                            && supported12Features.shaderStorageBufferArrayNonUniformIndexing());
+            logger.log(MessageType.VERBOSE, "drawIndirectCount " + (drawIndirectCount ? "supported" : "not supported")
+                    + ", multiDrawIndirect " + (multiDrawIndirect ? "supported" : "not supported")
+                    + ", descriptor indexing " + (descriptorIndexing ? "supported" : "not supported"));
 
             PointerBuffer deviceExtensions = stack.mallocPointer(deviceExtensionList.length);
             for (int i = 0; i < deviceExtensions.capacity(); i++) {
@@ -390,7 +553,7 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
             deviceExtensions.flip();
             VkDeviceCreateInfo deviceInfo = VkDeviceCreateInfo.malloc(stack)
                     .sType$Default()
-                    .pNext(NULL)
+                    .pNext(vulkan12Features.address())
                     .flags(0)
                     .pQueueCreateInfos(deviceQueueInfo)
                     .ppEnabledLayerNames(null)
@@ -403,10 +566,43 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
 
             vkGetDeviceQueue(device, queueIndices.graphics, 0, pb);
             graphicsQueue = new VkQueue(pb.get(0), device);
-            vkGetDeviceQueue(device, queueIndices.present, 0, pb);
-            presentQueue = new VkQueue(pb.get(0),device);
+            if (queueIndices.present >= 0) {
+                vkGetDeviceQueue(device, queueIndices.present, 0, pb);
+                presentQueue = new VkQueue(pb.get(0),device);
+            }
+            computeQueue = createDeviceQueue("compute", queueIndices.compute, pb);
+            transferQueue = queueIndices.transfer < 0 && queueIndices.compute >= 0 ? computeQueue // Still off the graphics queue
+                    : createDeviceQueue("transfer", queueIndices.transfer, pb);
+            logger.log(MessageType.INFO, "Queue families: graphics " + queueIndices.graphics + ", compute " + computeQueue.getFamily()
+                    + ", transfer " + transferQueue.getFamily());
+            uploadQueue = new DeviceQueue("upload", queueIndices.graphics, graphicsQueue, graphicsQueueLock, this);
+
+            memoryAllocator = new MemoryAllocator(memoryBlockSize, this);
+            pipelineCache = new PipelineCache(pipelineCachePath, this);
+            depthFormat = findDepthFormat(stack);
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(physicalDevice, properties);
+            sampleCounts = properties.limits().framebufferColorSampleCounts() & properties.limits().framebufferDepthSampleCounts();
+        }
+    }
 
+    private int findDepthFormat(MemoryStack stack) { // Preferred first, D32 has the most precision for perspective projections
+        VkFormatProperties formatProperties = VkFormatProperties.malloc(stack);
+        for (int format : new int[] {VK_FORMAT_D32_SFLOAT, VK_FORMAT_D32_SFLOAT_S8_UINT, VK_FORMAT_D24_UNORM_S8_UINT, VK_FORMAT_D16_UNORM}) {
+            vkGetPhysicalDeviceFormatProperties(physicalDevice, format, formatProperties);
+            if ((formatProperties.optimalTilingFeatures() & VK_FORMAT_FEATURE_DEPTH_STENCIL_ATTACHMENT_BIT) != 0) return format;
         }
+        logger.error("No supported depth attachment format");
+        return VK_FORMAT_UNDEFINED;
+    }
+
+    private DeviceQueue createDeviceQueue(String name, int dedicatedFamily, PointerBuffer pb) { // Falls back to the graphics queue
+        if (dedicatedFamily < 0)
+            return new DeviceQueue(name, queueIndices.graphics, graphicsQueue, graphicsQueueLock, this);
+
+        vkGetDeviceQueue(device, dedicatedFamily, 0, pb);
+        Object submitLock = dedicatedFamily == queueIndices.present ? graphicsQueueLock : new Object(); // Same VkQueue as presentQueue
+        return new DeviceQueue(name, dedicatedFamily, new VkQueue(pb.get(0), device), submitLock, this);
     }
 
     private void pickPhysicalDevice(Window testWindow) {
@@ -472,12 +668,32 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
                 }
             }
 
+            // Check Vulkan 1.2 feature support
+            if (VK_API_VERSION_MAJOR(properties.apiVersion()) == 1 && VK_API_VERSION_MINOR(properties.apiVersion()) < 2) {
+                logger.log(MessageType.INFO, "Device " + properties.deviceNameString() + " does not support Vulkan 1.2, skipping");
+                return false;
+            }
+            VkPhysicalDeviceVulkan12Features vulkan12Features = VkPhysicalDeviceVulkan12Features.calloc(stack)
+                    .sType$Default();
+            VkPhysicalDeviceFeatures2 features = VkPhysicalDeviceFeatures2.calloc(stack)
+                    .sType$Default()
+                    .pNext(vulkan12Features.address());
+            vkGetPhysicalDeviceFeatures2(physicalDevice, features);
+            if (!vulkan12Features.timelineSemaphore()) {
+                logger.log(MessageType.INFO, "Device " + properties.deviceNameString() + " does not support timeline semaphores, skipping");
+                return false;
+            }
+
+            AvailableQueueFamilyIndices indices = queryQueueFamilyIndices(stack, physicalDevice, testWindow);
+            if (testWindow == null) {
+                return indices.graphicsAvailable();
+            }
+
             SurfaceInfo sInfo = testWindow.querySurfaceInfo(stack, physicalDevice);
             if (!sInfo.available()) {
                 return false;
             }
 
-            AvailableQueueFamilyIndices indices = queryQueueFamilyIndices(stack, physicalDevice, testWindow);
             return indices.allAvailable();
         }
     }
@@ -487,6 +703,8 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
 
         int graphicsQueue = -1;
         int presentQueue = -1;
+        int computeQueue = -1; // Compute without graphics
+        int transferQueue = -1; // Transfer only
 
         vkGetPhysicalDeviceQueueFamilyProperties(physicalDevice, ib, null);
         if (ib.get(0) > 0) {
@@ -505,9 +723,13 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
                     bothAvailable = false;
                 }
 
+                if (testWindow == null) { // Headless, no presentation needed
+                    if (graphicsQueue >= 0) break;
+                    continue;
+                }
 
                 chErr(vkGetPhysicalDeviceSurfaceSupportKHR(physicalDevice, i, testWindow.getSurface(), ib));
-                if (ib.get(0) == VK_TRUE && (!platform.equals("Windows") || vkGetPhysicalDeviceWin32PresentationSupportKHR(physicalDevice, i))) {
+                if (ib.get(0) == VK_TRUE && (!"Windows".equals(platform) || vkGetPhysicalDeviceWin32PresentationSupportKHR(physicalDevice, i))) {
                     if (presentQueue < 0) {
                         presentQueue = i;
                     }
@@ -522,20 +744,33 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
                     break;
                 }
             }
+
+            // Families without graphics let uploads and async compute overlap rendering instead of queueing behind it
+            for (int i = 0; i < availableQueueFamilies.capacity(); i++) {
+                int flags = availableQueueFamilies.get(i).queueFlags();
+                if ((flags & VK_QUEUE_GRAPHICS_BIT) != 0) continue;
+
+                if ((flags & VK_QUEUE_COMPUTE_BIT) != 0) {
+                    if (computeQueue < 0) computeQueue = i;
+                }
+                else if ((flags & VK_QUEUE_TRANSFER_BIT) != 0) {
+                    if (transferQueue < 0) transferQueue = i;
+                }
+            }
         }
 
-        return new AvailableQueueFamilyIndices(graphicsQueue, presentQueue);
+        return new AvailableQueueFamilyIndices(graphicsQueue, presentQueue, computeQueue, transferQueue);
     }
 
     private PointerBuffer queryReqInstanceExtensions(MemoryStack stack) {
-        PointerBuffer glfwReqExtensions = glfwGetRequiredInstanceExtensions();
-        if (glfwReqExtensions == null)
+        PointerBuffer glfwReqExtensions = headless ? null : glfwGetRequiredInstanceExtensions();
+        if (glfwReqExtensions == null && !headless)
             logger.error("glfwGetRequiredInstanceExtensions failed to find the platform surface extensions");
         int extraExtensionCount = instanceExtensionList.length;
         if (validate) extraExtensionCount++; // debug utils extension
-        assert glfwReqExtensions != null;
-        PointerBuffer reqExtensions = stack.mallocPointer(glfwReqExtensions.capacity() + extraExtensionCount);
-        reqExtensions.put(glfwReqExtensions);
+        int glfwExtensionCount = glfwReqExtensions == null ? 0 : glfwReqExtensions.capacity();
+        PointerBuffer reqExtensions = stack.mallocPointer(glfwExtensionCount + extraExtensionCount);
+        if (glfwReqExtensions != null) reqExtensions.put(glfwReqExtensions);
         for (String s : instanceExtensionList) {
             reqExtensions.put(stack.ASCII(s));
         }
@@ -545,14 +780,34 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
     }
 
     protected void chErr(int code) { // return code error checking function
-        if (code != 0 && code != 5) logger.error(String.format("Vulkan error [0x%X]", code));
+        if (code < 0) logger.error(String.format("Vulkan error [0x%X]", code));
     }
 
     public int nextFrame() {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            frameIndex = (frameIndex + 1) % frameCount;
-            vkWaitForFences(device, frameAvailableFences[frameIndex], true, Long.MAX_VALUE);
-            vkResetFences(device, frameAvailableFences[frameIndex]);
+            frameNumber++;
+            frameIndex = (int) (frameNumber % frameCount);
+
+            // Wait until the frame that last used this slot has finished on the GPU
+            long waitStart = System.nanoTime();
+            frameMetrics.frameStarted(waitStart, frameNumber);
+            if (frameNumber > frameCount) {
+                VkSemaphoreWaitInfo waitInfo = VkSemaphoreWaitInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(NULL)
+                        .flags(0)
+                        .semaphoreCount(1)
+                        .pSemaphores(stack.longs(frameTimeline))
+                        .pValues(stack.longs(frameNumber - frameCount));
+                chErr(vkWaitSemaphores(device, waitInfo, Long.MAX_VALUE));
+            }
+            lastFrameWaitTime = System.nanoTime() - waitStart;
+            frameMetrics.record(FrameMetrics.Phase.FRAME_WAIT, lastFrameWaitTime);
+            destroyRetired(getCompletedFrame());
+            computeQueue.poll();
+            if (transferQueue != computeQueue) transferQueue.poll();
+            uploadQueue.poll();
+            frameSubmissions[frameIndex].reset();
 
             vkResetCommandPool(device, commandPools[frameIndex], 0);
             VkCommandBufferBeginInfo commandBufferBeginInfo = VkCommandBufferBeginInfo.malloc(stack)
@@ -561,57 +816,197 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
                     .flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT)
                     .pInheritanceInfo(null);
             chErr(vkBeginCommandBuffer(commandBuffers[frameIndex], commandBufferBeginInfo));
+            if (gpuProfiler != null) gpuProfiler.beginFrame(commandBuffers[frameIndex], frameIndex);
+            stagingRing.beginFrame(frameIndex);
+            descriptorAllocator.beginFrame(frameIndex);
+            frameRecording = true;
 
+            recordStart = System.nanoTime();
             return frameIndex;
         }
     }
 
     public void endFrame() {
+        stagingRing.flush(commandBuffers[frameIndex]);
+        if (gpuProfiler != null) gpuProfiler.endFrame(commandBuffers[frameIndex]);
         chErr(vkEndCommandBuffer(commandBuffers[frameIndex]));
+        frameRecording = false;
+        frameMetrics.record(FrameMetrics.Phase.RECORD, System.nanoTime() - recordStart);
     }
 
     public CmdRecorder recordWith(WindowFramebuffer framebuffer, Pipeline pipeline) {
+        stagingRing.flush(commandBuffers[frameIndex]);
         cmdRecorder.start(commandBuffers[frameIndex], framebuffer.getFramebuffers()[framebuffer.requestNextImage()], pipeline);
         return cmdRecorder;
     }
 
-    public void enqueueFrame(int frame) {
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            LongBuffer imageAvailableSemaphores = stack.mallocLong(windowFramebuffers.size());
-            for (WindowFramebuffer windowFramebuffer : windowFramebuffers) {
-                if (windowFramebuffer.isNextImageRequested()) {
-                    imageAvailableSemaphores.put(windowFramebuffer.getImageAcquisitionSemaphore());
-                }
+    public CmdRecorder recordWith(Framebuffer framebuffer, Pipeline pipeline) { // Offscreen rendering into user created images
+        stagingRing.flush(commandBuffers[frameIndex]);
+        cmdRecorder.start(commandBuffers[frameIndex], framebuffer, pipeline);
+        return cmdRecorder;
+    }
+
+    // Compute work in the frame's command buffer, outside of render passes. Use CmdRecorder.barrier before graphics reads the results
+    public CmdRecorder recordCompute(ComputePipeline computePipeline) {
+        stagingRing.flush(commandBuffers[frameIndex]);
+        cmdRecorder.startCommands(commandBuffers[frameIndex]);
+        cmdRecorder.bindComputePipeline(computePipeline);
+        return cmdRecorder;
+    }
+
+    // The render pass may only contain secondary command buffers recorded with ThreadRecorder, see CmdRecorder.execute
+    public CmdRecorder recordParallelWith(WindowFramebuffer framebuffer, Pipeline pipeline) {
+        stagingRing.flush(commandBuffers[frameIndex]);
+        cmdRecorder.startParallel(commandBuffers[frameIndex], framebuffer.getFramebuffers()[framebuffer.requestNextImage()], pipeline);
+        return cmdRecorder;
+    }
+
+    public CmdRecorder recordParallelWith(Framebuffer framebuffer, Pipeline pipeline) {
+        stagingRing.flush(commandBuffers[frameIndex]);
+        cmdRecorder.startParallel(commandBuffers[frameIndex], framebuffer, pipeline);
+        return cmdRecorder;
+    }
+
+    protected VkCommandBuffer recordGraph() { // The frame's command buffer for RenderGraph.execute, with pending uploads flushed
+        if (!frameRecording || cmdRecorder.isInRenderPass())
+            logger.error("Render graphs can only be executed while recording a frame, outside of render passes");
+        stagingRing.flush(commandBuffers[frameIndex]);
+        return commandBuffers[frameIndex];
+    }
+
+    protected CmdRecorder getCmdRecorder() {
+        return cmdRecorder;
+    }
+
+    protected void uploadToBuffer(Buffer dst, ByteBuffer data, long dstOffset) {
+        if (frameRecording) { // Recorded into the current frame, before its render passes
+            if (cmdRecorder.isInRenderPass())
+                logger.error("Cannot upload buffer data while recording a render pass");
+            stagingRing.upload(commandBuffers[frameIndex], data, dst, dstOffset);
+            return;
+        }
+
+        Buffer staging = new Buffer(data.remaining(), VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryAllocator.MemoryUsage.CPU_TO_GPU, this);
+        staging.write(data, 0);
+        submitImmediate(commandBuffer -> {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkBufferCopy.Buffer region = VkBufferCopy.malloc(1, stack)
+                        .srcOffset(0)
+                        .dstOffset(dstOffset)
+                        .size(data.remaining());
+                vkCmdCopyBuffer(commandBuffer, staging.getBuffer(), dst.getBuffer(), region);
+            }
+        });
+        staging.destroy();
+    }
+
+    protected long uploadToBufferAsync(Buffer dst, ByteBuffer data, long dstOffset) { // Returns the transfer queue value to acquire with
+        long size = data.remaining();
+        Buffer staging = new Buffer(size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryAllocator.MemoryUsage.CPU_TO_GPU, this);
+        staging.write(data, 0);
+        return transferQueue.submit(commandBuffer -> {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkBufferCopy.Buffer region = VkBufferCopy.malloc(1, stack)
+                        .srcOffset(0)
+                        .dstOffset(dstOffset)
+                        .size(size);
+                vkCmdCopyBuffer(commandBuffer, staging.getBuffer(), dst.getBuffer(), region);
             }
-            imageAvailableSemaphores.flip();
+            DeviceQueue.releaseBuffer(commandBuffer, dst, transferQueue.getFamily(), queueIndices.graphics,
+                    VK_PIPELINE_STAGE_TRANSFER_BIT, VK_ACCESS_TRANSFER_WRITE_BIT);
+        }, staging::destroy);
+    }
+
+    public void waitForQueue(DeviceQueue queue, long value, int dstStageMask) { // The current frame's submission waits for value on queue
+        if (!frameRecording) logger.error("Queue waits can only be added while recording a frame");
+        frameSubmissions[frameIndex].addWait(queue.getTimeline(), value, dstStageMask);
+    }
+
+    // Makes the current frame wait for value on queue and takes ownership of the buffer released there, outside render passes
+    public void acquireBuffer(Buffer buffer, DeviceQueue queue, long value, int dstStageMask, int dstAccessMask) {
+        if (!frameRecording || cmdRecorder.isInRenderPass())
+            logger.error("Buffers can only be acquired while recording a frame, outside of render passes");
+
+        frameSubmissions[frameIndex].addWait(queue.getTimeline(), value, dstStageMask);
+        DeviceQueue.acquireBuffer(commandBuffers[frameIndex], buffer, queue.getFamily(), queueIndices.graphics,
+                dstStageMask, dstAccessMask);
+    }
+
+    protected void submitImmediate(Consumer<VkCommandBuffer> commands) { // Blocks until the commands have executed
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+            PointerBuffer pb = stack.mallocPointer(1);
+
+            VkCommandBufferAllocateInfo commandBufferInfo = VkCommandBufferAllocateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .commandPool(immediateCommandPool)
+                    .level(VK_COMMAND_BUFFER_LEVEL_PRIMARY)
+                    .commandBufferCount(1);
+            chErr(vkAllocateCommandBuffers(device, commandBufferInfo, pb));
+            VkCommandBuffer commandBuffer = new VkCommandBuffer(pb.get(0), device);
+
+            VkCommandBufferBeginInfo commandBufferBeginInfo = VkCommandBufferBeginInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(VK_COMMAND_BUFFER_USAGE_ONE_TIME_SUBMIT_BIT)
+                    .pInheritanceInfo(null);
+            chErr(vkBeginCommandBuffer(commandBuffer, commandBufferBeginInfo));
+            commands.accept(commandBuffer);
+            chErr(vkEndCommandBuffer(commandBuffer));
+
+            VkFenceCreateInfo fenceInfo = VkFenceCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0);
+            chErr(vkCreateFence(device, fenceInfo, null, lb));
+            long fence = lb.get(0);
 
             VkSubmitInfo submitInfo = VkSubmitInfo.malloc(stack)
                     .sType$Default()
                     .pNext(NULL)
-                    .waitSemaphoreCount(imageAvailableSemaphores.remaining())
-                    .pWaitSemaphores(imageAvailableSemaphores)
-                    .pWaitDstStageMask(stack.ints(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT)) // TODO: more attachments
-                    .pCommandBuffers(stack.pointers(commandBuffers[frame]))
-                    .pSignalSemaphores(stack.longs(frameFinishedSemaphores[frame]));
-            chErr(vkQueueSubmit(graphicsQueue, submitInfo, frameAvailableFences[frame]));
-
-            for (WindowFramebuffer windowFramebuffer : windowFramebuffers) {
-                if (windowFramebuffer.isNextImageRequested()) {
-                    VkPresentInfoKHR presentInfo = VkPresentInfoKHR.malloc(stack)
-                            .sType$Default()
-                            .pNext(NULL)
-                            .pWaitSemaphores(stack.longs(frameFinishedSemaphores[frame]))
-                            .swapchainCount(1)
-                            .pSwapchains(stack.longs(windowFramebuffer.getWindow().getSwapchain()))
-                            .pImageIndices(stack.ints(windowFramebuffer.getImageIndex()))
-                            .pResults(null);
-                    vkQueuePresentKHR(presentQueue, presentInfo);
-                    windowFramebuffer.nextImageUsed();
-                }
+                    .waitSemaphoreCount(0)
+                    .pWaitSemaphores(null)
+                    .pWaitDstStageMask(null)
+                    .pCommandBuffers(pb)
+                    .pSignalSemaphores(null);
+            synchronized (graphicsQueueLock) {
+                chErr(vkQueueSubmit(graphicsQueue, submitInfo, fence));
             }
+            chErr(vkWaitForFences(device, fence, true, Long.MAX_VALUE));
+
+            vkDestroyFence(device, fence, null);
+            vkFreeCommandBuffers(device, immediateCommandPool, commandBuffer);
         }
     }
 
+    public void enqueueFrame(int frame) {
+        long submitStart = System.nanoTime();
+        FrameSubmission submission = frameSubmissions[frame];
+        for (int i = 0; i < windowFramebuffers.size(); i++) { // Indexed, an iterator here would be per frame garbage
+            WindowFramebuffer windowFramebuffer = windowFramebuffers.get(i);
+            if (windowFramebuffer.isNextImageRequested()) submission.addPresent(windowFramebuffer);
+        }
+
+        synchronized (graphicsQueueLock) {
+            chErr(submission.submit(graphicsQueue, frameNumber));
+            if (submission.getPresentCount() > 0)
+                submission.present(presentQueue); // Every swapchain in one call, the per swapchain results are handled below
+        }
+        if (submission.getPresentCount() > 0) {
+            for (int i = 0; i < submission.getPresentCount(); i++) {
+                WindowFramebuffer windowFramebuffer = submission.getPresented(i);
+                int result = submission.getResult(i);
+                if (result == VK_ERROR_OUT_OF_DATE_KHR || result == VK_SUBOPTIMAL_KHR)
+                    windowFramebuffer.getWindow().invalidateSwapchain(); // Recreated when the window's next image is requested
+                else if (result < 0)
+                    logger.error(String.format("Presenting to window \"%s\" failed [0x%X]", windowFramebuffer.getWindow().getTitle(), result));
+                windowFramebuffer.nextImageUsed();
+            }
+        }
+        frameMetrics.record(FrameMetrics.Phase.SUBMIT, System.nanoTime() - submitStart);
+    }
+
     //region getters and setters
     public List<String> getDeviceNames() {
         return deviceNameList;
@@ -685,6 +1080,56 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         return validate;
     }
 
+    public boolean isHeadless() {
+        return headless;
+    }
+
+    public int getFramesInFlight() {
+        return frameCount;
+    }
+
+    public long getFrameNumber() { // The frame currently being recorded
+        return frameNumber;
+    }
+
+    // Defers destruction of objects the current or earlier frames may still use, instead of waiting for the device
+    protected void retire(Runnable destroy) { // Also from loader threads
+        synchronized (retiredObjects) {
+            retiredObjects.add(new RetiredObject(frameNumber, destroy));
+        }
+    }
+
+    private void destroyRetired(long completedFrame) {
+        while (true) {
+            RetiredObject retired;
+            synchronized (retiredObjects) {
+                if (retiredObjects.isEmpty() || retiredObjects.peek().frameNumber() > completedFrame) return;
+                retired = retiredObjects.poll();
+            }
+            retired.destroy().run();
+        }
+    }
+
+    public long getCompletedFrame() { // The last frame the GPU has finished, does not block
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+            chErr(vkGetSemaphoreCounterValue(device, frameTimeline, lb));
+            return lb.get(0);
+        }
+    }
+
+    public boolean isFrameComplete(long frame) {
+        return getCompletedFrame() >= frame;
+    }
+
+    public long getLastFrameWaitTime() { // Nanoseconds nextFrame spent blocked on the GPU, high values mean GPU bound
+        return lastFrameWaitTime;
+    }
+
+    protected int getFrameIndex() {
+        return frameIndex;
+    }
+
     public String getAppName() {
         return appName;
     }
@@ -709,6 +1154,80 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         return device;
     }
 
+    public PipelineRegistry getPipelineRegistry() {
+        return pipelineRegistry;
+    }
+
+    public PipelineCache getPipelineCache() {
+        return pipelineCache;
+    }
+
+    public DeviceQueue getComputeQueue() {
+        return computeQueue;
+    }
+
+    public DeviceQueue getTransferQueue() { // The compute or graphics queue if there is no transfer only family
+        return transferQueue;
+    }
+
+    protected DeviceQueue getUploadQueue() {
+        return uploadQueue;
+    }
+
+    public TextureLoader getTextureLoader() {
+        return textureLoader;
+    }
+
+    public FrameMetrics getFrameMetrics() {
+        return frameMetrics;
+    }
+
+    public GpuProfiler getGpuProfiler() { // null unless Settings.gpuProfiling is set
+        return gpuProfiler;
+    }
+
+    public ShaderCompiler getShaderCompiler() {
+        return shaderCompiler;
+    }
+
+    public ShaderCache getShaderCache() {
+        return shaderCache;
+    }
+
+    public boolean isDrawIndirectCountSupported() {
+        return drawIndirectCount;
+    }
+
+    public boolean isMultiDrawIndirectSupported() {
+        return multiDrawIndirect;
+    }
+
+    public int getDepthFormat() { // Used for Pipeline.Settings.depthTest, or to create depth images for a RenderGraph
+        return depthFormat;
+    }
+
+    public int getSampleCount(int requested) { // The highest supported sample count up to requested, 1 is always supported
+        int samples = Integer.highestOneBit(Math.max(1, Math.min(requested, VK_SAMPLE_COUNT_64_BIT)));
+        while ((sampleCounts & samples) == 0) samples >>= 1;
+        return samples;
+    }
+
+    public boolean isDescriptorIndexingSupported() { // Needed for BindlessTable
+        return descriptorIndexing;
+    }
+
+    public DescriptorAllocator getDescriptorAllocator() {
+        return descriptorAllocator;
+    }
+
+    public DescriptorSet allocateDescriptorSet(DescriptorLayout layout) { // Valid for the frame being recorded
+        return descriptorAllocator.allocate(layout);
+    }
+
+    public MemoryAllocator getMemoryAllocator() {
+        return memoryAllocator;
+    }
+
     protected AvailableQueueFamilyIndices getQueueIndices() {
         return queueIndices;
     }
@@ -721,12 +1240,16 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         windows.remove(window);
     }
 
-    protected void addShader(Shader shader) {
-        shaders.add(shader);
+    protected void addShader(Shader shader) { // Shaders can be created from compiler threads
+        synchronized (shaders) {
+            shaders.add(shader);
+        }
     }
 
     protected void removeShader(Shader shader) {
-        shaders.remove(shader);
+        synchronized (shaders) {
+            shaders.remove(shader);
+        }
     }
 
     protected void addPipeline(Pipeline pipeline) {
@@ -737,12 +1260,80 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         pipelines.remove(pipeline);
     }
 
-    protected void addImage(Image image) {
-        images.remove(image);
+    protected void addImage(Image image) { // Textures are created on loader threads
+        synchronized (images) {
+            images.add(image);
+        }
     }
 
     protected void removeImage(Image image) {
-        images.remove(image);
+        synchronized (images) {
+            images.remove(image);
+        }
+    }
+
+    protected void addBuffer(Buffer buffer) {
+        synchronized (buffers) {
+            buffers.add(buffer);
+        }
+    }
+
+    protected void removeBuffer(Buffer buffer) {
+        synchronized (buffers) {
+            buffers.remove(buffer);
+        }
+    }
+
+    protected void addComputePipeline(ComputePipeline computePipeline) {
+        computePipelines.add(computePipeline);
+    }
+
+    protected void removeComputePipeline(ComputePipeline computePipeline) {
+        computePipelines.remove(computePipeline);
+    }
+
+    protected void addThreadRecorder(ThreadRecorder threadRecorder) {
+        synchronized (threadRecorders) {
+            threadRecorders.add(threadRecorder);
+        }
+    }
+
+    protected void removeThreadRecorder(ThreadRecorder threadRecorder) {
+        synchronized (threadRecorders) {
+            threadRecorders.remove(threadRecorder);
+        }
+    }
+
+    protected void addSampler(Sampler sampler) {
+        samplers.add(sampler);
+    }
+
+    protected void removeSampler(Sampler sampler) {
+        samplers.remove(sampler);
+    }
+
+    protected void addBindlessTable(BindlessTable bindlessTable) {
+        bindlessTables.add(bindlessTable);
+    }
+
+    protected void removeBindlessTable(BindlessTable bindlessTable) {
+        bindlessTables.remove(bindlessTable);
+    }
+
+    protected void addUniformRing(UniformRing uniformRing) {
+        uniformRings.add(uniformRing);
+    }
+
+    protected void removeUniformRing(UniformRing uniformRing) {
+        uniformRings.remove(uniformRing);
+    }
+
+    protected void addRenderGraph(RenderGraph renderGraph) {
+        renderGraphs.add(renderGraph);
+    }
+
+    protected void removeRenderGraph(RenderGraph renderGraph) {
+        renderGraphs.remove(renderGraph);
     }
 
     protected void addFramebuffer(Framebuffer framebuffer) {
@@ -755,10 +1346,13 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
 
     protected void addWindowFramebuffer(WindowFramebuffer windowFramebuffer) {
         windowFramebuffers.add(windowFramebuffer);
+        for (FrameSubmission submission : frameSubmissions) {
+            submission.ensureCapacity(windowFramebuffers.size());
+        }
     }
 
     protected void removeWindowFramebuffer(WindowFramebuffer windowFramebuffer) {
-        windowFramebuffers.add(windowFramebuffer);
+        windowFramebuffers.remove(windowFramebuffer);
     }
     //endregion
 
@@ -776,10 +1370,16 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
     //endregion
 
     // If index is -1, it is not available
-    protected record AvailableQueueFamilyIndices(int graphics, int present) {
+    private record RetiredObject(long frameNumber, Runnable destroy) { }
+
+    protected record AvailableQueueFamilyIndices(int graphics, int present, int compute, int transfer) { // compute, transfer: dedicated families
         public boolean allAvailable() {
             return graphics >= 0 && present >= 0;
         }
+
+        public boolean graphicsAvailable() {
+            return graphics >= 0;
+        }
     }
 
     public record Version(int major, int minor, int patch) { }
@@ -788,6 +1388,18 @@ public class Fuel3D { // Contains the instance, logical and physical device, and
         public String appName = "App", engineName = NAME;
         public Version appVersion = new Version(1, 0 ,0), engineVersion = VERSION;
         public Logger logger = new Logger(new Logger.Settings());
+        public int framesInFlight = 2; // 1-4, more frames give throughput at the cost of latency
+        public long memoryBlockSize = 64L * 1024 * 1024; // Size of the device memory blocks resources are sub-allocated from
+        public long stagingBufferSize = 8L * 1024 * 1024; // Per frame in flight, for uploads recorded into the frame
+        public int shaderCompilerThreads = Runtime.getRuntime().availableProcessors();
+        public int textureLoaderThreads = 2; // Decode threads, started on the first TextureLoader.load
+        public Path shaderCacheDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "fuel3d", "shadercache"); // null to disable
+        public Path pipelineCachePath = Paths.get(System.getProperty("java.io.tmpdir"), "fuel3d", "pipeline.cache"); // null to not persist
+        public boolean gpuProfiling = false; // Timestamp queries, see Fuel3D.getGpuProfiler
+        public int gpuProfilerScopes = 64; // Max CmdRecorder.beginProfile scopes per frame
+        public int gpuProfilerHistory = 240; // Frames the rolling statistics are computed over
+        public double frameMetricsExportInterval = 5.0; // Seconds between FrameMetrics sink exports, 0 to only export on destroy
+        public int descriptorSetsPerPool = 256; // Frames that need more sets get more pools
         private boolean validate = false;
         private Debugger debugger = null;
 
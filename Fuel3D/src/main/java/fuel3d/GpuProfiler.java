@@ -0,0 +1,216 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+import org.lwjgl.vulkan.VkQueryPoolCreateInfo;
+import org.lwjgl.vulkan.VkQueueFamilyProperties;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.*;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class GpuProfiler { // Timestamp queries around the frame and named scopes, one query pool per frame in flight
+    private final Fuel3D renderer;
+    private final int frameCount, maxScopes, historyLength;
+    private final long[] queryPools;
+    private final String[][] scopeNames; // Per frame slot, scope i uses queries 2 + 2i and 3 + 2i
+    private final int[] scopeCounts;
+    private final boolean[] pending; // Slot holds an ended frame whose results were not read yet
+    private final int[] openScopes; // Stack of scope indices, -1 for scopes dropped because the pool was full
+    private int openScopeCount = 0;
+    private int currentFrame = -1;
+    private final LongBuffer results;
+    private final double timestampPeriod; // Nanoseconds per tick
+    private final long timestampMask;
+    private final boolean supported;
+    private boolean overflowReported = false;
+
+    private final Map<String, ScopeHistory> histories = new LinkedHashMap<>();
+
+    public static final String FRAME_SCOPE = "frame";
+
+    protected GpuProfiler(int frameCount, int maxScopes, int historyLength, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.frameCount = frameCount;
+        this.maxScopes = maxScopes;
+        this.historyLength = historyLength;
+        queryPools = new long[frameCount];
+        scopeNames = new String[frameCount][maxScopes];
+        scopeCounts = new int[frameCount];
+        pending = new boolean[frameCount];
+        openScopes = new int[maxScopes];
+        results = memAllocLong(2 + 2 * maxScopes);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(renderer.getPhysicalDevice(), properties);
+            timestampPeriod = properties.limits().timestampPeriod();
+
+            IntBuffer ib = stack.mallocInt(1);
+            vkGetPhysicalDeviceQueueFamilyProperties(renderer.getPhysicalDevice(), ib, null);
+            VkQueueFamilyProperties.Buffer queueFamilies = VkQueueFamilyProperties.malloc(ib.get(0), stack);
+            vkGetPhysicalDeviceQueueFamilyProperties(renderer.getPhysicalDevice(), ib, queueFamilies);
+            int validBits = queueFamilies.get(renderer.getQueueIndices().graphics()).timestampValidBits();
+            timestampMask = validBits >= 64 ? -1L : (1L << validBits) - 1;
+            supported = validBits > 0;
+        }
+
+        if (!supported) {
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Graphics queue does not support timestamps, GPU profiling disabled");
+            return;
+        }
+        create();
+    }
+
+    protected void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkQueryPoolCreateInfo queryPoolInfo = VkQueryPoolCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .queryType(VK_QUERY_TYPE_TIMESTAMP)
+                    .queryCount(2 + 2 * maxScopes)
+                    .pipelineStatistics(0);
+            for (int frame = 0; frame < frameCount; frame++) {
+                renderer.chErr(vkCreateQueryPool(renderer.getDevice(), queryPoolInfo, null, lb));
+                queryPools[frame] = lb.get(0);
+            }
+        }
+    }
+
+    protected void beginFrame(VkCommandBuffer commandBuffer, int frame) { // The slot's previous frame has finished on the GPU
+        if (!supported) return;
+        if (pending[frame]) collect(frame);
+
+        currentFrame = frame;
+        scopeCounts[frame] = 0;
+        openScopeCount = 0;
+        vkCmdResetQueryPool(commandBuffer, queryPools[frame], 0, 2 + 2 * maxScopes);
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, queryPools[frame], 0);
+    }
+
+    protected void endFrame(VkCommandBuffer commandBuffer) {
+        if (!supported) return;
+        if (openScopeCount > 0)
+            renderer.getLogger().error("GPU profiler scope \"" + scopeNames[currentFrame][openScopes[openScopeCount - 1]] + "\" was not ended");
+
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, queryPools[currentFrame], 1);
+        pending[currentFrame] = true;
+    }
+
+    protected void beginScope(VkCommandBuffer commandBuffer, String name) {
+        if (!supported) return;
+        if (openScopeCount == maxScopes)
+            renderer.getLogger().error("GPU profiler scopes nested deeper than " + maxScopes);
+
+        int scope = scopeCounts[currentFrame];
+        if (scope == maxScopes) { // Keep the frame going, the scope is just not measured
+            if (!overflowReported) {
+                renderer.getLogger().log(Logger.MessageType.WARNING, "More than " + maxScopes + " GPU profiler scopes in a frame, dropping the rest");
+                overflowReported = true;
+            }
+            openScopes[openScopeCount++] = -1;
+            return;
+        }
+        scopeNames[currentFrame][scope] = name;
+        scopeCounts[currentFrame]++;
+        openScopes[openScopeCount++] = scope;
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, queryPools[currentFrame], 2 + 2 * scope);
+    }
+
+    protected void endScope(VkCommandBuffer commandBuffer) {
+        if (!supported) return;
+        if (openScopeCount == 0)
+            renderer.getLogger().error("GPU profiler scope ended without being started");
+
+        int scope = openScopes[--openScopeCount];
+        if (scope < 0) return;
+        vkCmdWriteTimestamp(commandBuffer, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, queryPools[currentFrame], 3 + 2 * scope);
+    }
+
+    private synchronized void collect(int frame) {
+        int queryCount = 2 + 2 * scopeCounts[frame];
+        results.clear().limit(queryCount);
+        renderer.chErr(vkGetQueryPoolResults(renderer.getDevice(), queryPools[frame], 0, queryCount, results,
+                Long.BYTES, VK_QUERY_RESULT_64_BIT | VK_QUERY_RESULT_WAIT_BIT));
+        pending[frame] = false;
+
+        record(FRAME_SCOPE, results.get(0), results.get(1));
+        for (int scope = 0; scope < scopeCounts[frame]; scope++) {
+            record(scopeNames[frame][scope], results.get(2 + 2 * scope), results.get(3 + 2 * scope));
+        }
+    }
+
+    private void record(String name, long start, long end) {
+        ScopeHistory history = histories.get(name);
+        if (history == null) {
+            history = new ScopeHistory(historyLength);
+            histories.put(name, history);
+        }
+        history.add(((end - start) & timestampMask) * timestampPeriod);
+    }
+
+    public synchronized List<String> getScopeNames() { // In the order they were first seen, includes FRAME_SCOPE
+        return List.copyOf(histories.keySet());
+    }
+
+    public synchronized ScopeStatistics getStatistics(String name) { // null if the scope was never measured
+        ScopeHistory history = histories.get(name);
+        return history == null ? null : history.statistics(name);
+    }
+
+    public synchronized List<ScopeStatistics> getAllStatistics() {
+        List<ScopeStatistics> statistics = new ArrayList<>(histories.size());
+        histories.forEach((name, history) -> statistics.add(history.statistics(name)));
+        return statistics;
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    protected void destroy() {
+        if (supported) {
+            for (long queryPool : queryPools) {
+                vkDestroyQueryPool(renderer.getDevice(), queryPool, null);
+            }
+        }
+        memFree(results);
+    }
+
+    public record ScopeStatistics(String name, int samples, double minMillis, double avgMillis, double p99Millis, double lastMillis) { }
+
+    private static class ScopeHistory { // Ring of the last samples in nanoseconds
+        private final double[] samples;
+        private int count = 0, next = 0;
+
+        private ScopeHistory(int length) {
+            samples = new double[length];
+        }
+
+        private void add(double sample) {
+            samples[next] = sample;
+            next = (next + 1) % samples.length;
+            if (count < samples.length) count++;
+        }
+
+        private ScopeStatistics statistics(String name) {
+            double[] sorted = new double[count];
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sorted[i] = samples[i];
+                sum += samples[i];
+            }
+            Arrays.sort(sorted);
+            double last = samples[(next - 1 + samples.length) % samples.length];
+            int p99 = Math.min(count - 1, (int) Math.ceil(count * 0.99) - 1);
+            return new ScopeStatistics(name, count, sorted[0] / 1e6, sum / count / 1e6, sorted[p99] / 1e6, last / 1e6);
+        }
+    }
+}
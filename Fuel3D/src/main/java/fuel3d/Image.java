@@ -1,6 +1,7 @@
 package fuel3d;
 
 import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkImageCreateInfo;
 import org.lwjgl.vulkan.VkImageViewCreateInfo;
 
 import java.nio.LongBuffer;
@@ -11,58 +12,150 @@ import static org.lwjgl.vulkan.VK10.*;
 public class Image {
     private final Fuel3D renderer;
     private  long image, imageView;
+    private MemoryAllocator.Allocation allocation; // Only used if userCreated
     private final int imageFormat;
+    private final int usage;
     private final boolean userCreated;
     private final int width, height;
+    private final int mipLevels;
+    private final int samples;
+    private final boolean aliased; // Memory is owned and bound by a RenderGraph, the view is created in bindMemory
     // data = null if not userCreated
 
     protected Image(long image, int imageFormat, int width, int height, Fuel3D renderer) {
         this.image = image;
         this.imageFormat = imageFormat;
+        this.usage = VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT;
         this.userCreated = false;
         this.width = width;
         this.height = height;
+        this.mipLevels = 1;
+        this.samples = VK_SAMPLE_COUNT_1_BIT;
+        this.aliased = false;
         this.renderer = renderer;
 
         create();
     }
 
+    public Image(int width, int height, int imageFormat, Fuel3D renderer) { // Offscreen render target
+        this(width, height, imageFormat,
+                VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT | VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_SAMPLED_BIT,
+                renderer);
+    }
+
+    protected Image(int width, int height, int imageFormat, int usage, Fuel3D renderer) {
+        this(width, height, imageFormat, usage, 1, renderer);
+    }
+
+    protected Image(int width, int height, int imageFormat, int usage, int mipLevels, Fuel3D renderer) { // Textures
+        this(width, height, imageFormat, usage, mipLevels, VK_SAMPLE_COUNT_1_BIT, false, renderer);
+        renderer.addImage(this);
+    }
+
+    private Image(int width, int height, int imageFormat, int usage, int mipLevels, int samples, boolean aliased, Fuel3D renderer) {
+        this.image = VK_NULL_HANDLE;
+        this.imageFormat = imageFormat;
+        this.usage = usage;
+        this.userCreated = true;
+        this.width = width;
+        this.height = height;
+        this.mipLevels = mipLevels;
+        this.samples = samples;
+        this.aliased = aliased;
+        this.renderer = renderer;
+
+        create();
+    }
+
+    // Transient RenderGraph attachment, not registered with the renderer. Unusable until bindMemory
+    protected static Image createAliased(int width, int height, int imageFormat, int usage, Fuel3D renderer) {
+        return new Image(width, height, imageFormat, usage, 1, VK_SAMPLE_COUNT_1_BIT, true, renderer);
+    }
+
+    // Multisampled color or depth attachment that is never stored, so it only needs memory while a render pass runs
+    protected static Image createTransientAttachment(int width, int height, int imageFormat, int usage, int samples, Fuel3D renderer) {
+        Image image = new Image(width, height, imageFormat, usage | VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT, 1, samples, false, renderer);
+        renderer.addImage(image);
+        return image;
+    }
+
     protected void create() {
-        // TODO: If userCreated then create the image here
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            LongBuffer lb = stack.mallocLong(1);
-            VkImageViewCreateInfo imageViewInfo = VkImageViewCreateInfo.malloc(stack)
-                    .sType$Default()
-                    .pNext(NULL)
-                    .flags(0)
-                    .image(image)
-                    .viewType(VK_IMAGE_VIEW_TYPE_2D)
-                    .format(imageFormat)
-                    .components(vkComponentMapping -> vkComponentMapping
-                            .r(VK_COMPONENT_SWIZZLE_IDENTITY)
-                            .g(VK_COMPONENT_SWIZZLE_IDENTITY)
-                            .b(VK_COMPONENT_SWIZZLE_IDENTITY)
-                            .a(VK_COMPONENT_SWIZZLE_IDENTITY))
-                    .subresourceRange(vkImageSubresourceRange -> vkImageSubresourceRange
-                            .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
-                            .baseMipLevel(0)
-                            .levelCount(1)
-                            .baseArrayLayer(0)
-                            .layerCount(1));
-            renderer.chErr(vkCreateImageView(renderer.getDevice(), imageViewInfo, null, lb));
-            imageView = lb.get(0);
+            if (userCreated) {
+                createImage(stack);
+            }
+            if (!aliased) createView(stack);
         }
     }
 
+    protected void bindMemory(long memory, long offset) { // Aliased images only, other images may be bound to the same range
+        renderer.chErr(vkBindImageMemory(renderer.getDevice(), image, memory, offset));
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            createView(stack);
+        }
+    }
+
+    private void createView(MemoryStack stack) {
+        LongBuffer lb = stack.mallocLong(1);
+
+        VkImageViewCreateInfo imageViewInfo = VkImageViewCreateInfo.malloc(stack)
+                .sType$Default()
+                .pNext(NULL)
+                .flags(0)
+                .image(image)
+                .viewType(VK_IMAGE_VIEW_TYPE_2D)
+                .format(imageFormat)
+                .components(vkComponentMapping -> vkComponentMapping
+                        .r(VK_COMPONENT_SWIZZLE_IDENTITY)
+                        .g(VK_COMPONENT_SWIZZLE_IDENTITY)
+                        .b(VK_COMPONENT_SWIZZLE_IDENTITY)
+                        .a(VK_COMPONENT_SWIZZLE_IDENTITY))
+                .subresourceRange(vkImageSubresourceRange -> vkImageSubresourceRange
+                        .aspectMask(getAspectMask())
+                        .baseMipLevel(0)
+                        .levelCount(mipLevels)
+                        .baseArrayLayer(0)
+                        .layerCount(1));
+        renderer.chErr(vkCreateImageView(renderer.getDevice(), imageViewInfo, null, lb));
+        imageView = lb.get(0);
+    }
+
+    private void createImage(MemoryStack stack) {
+        LongBuffer lb = stack.mallocLong(1);
+
+        VkImageCreateInfo imageInfo = VkImageCreateInfo.malloc(stack)
+                .sType$Default()
+                .pNext(NULL)
+                .flags(0)
+                .imageType(VK_IMAGE_TYPE_2D)
+                .format(imageFormat)
+                .extent(vkExtent3D -> vkExtent3D.set(width, height, 1))
+                .mipLevels(mipLevels)
+                .arrayLayers(1)
+                .samples(samples)
+                .tiling(VK_IMAGE_TILING_OPTIMAL)
+                .usage(usage)
+                .sharingMode(VK_SHARING_MODE_EXCLUSIVE)
+                .queueFamilyIndexCount(0)
+                .pQueueFamilyIndices(null)
+                .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED);
+        renderer.chErr(vkCreateImage(renderer.getDevice(), imageInfo, null, lb));
+        image = lb.get(0);
+
+        if (!aliased) allocation = renderer.getMemoryAllocator().allocateImage(image, (usage & VK_IMAGE_USAGE_TRANSIENT_ATTACHMENT_BIT) != 0
+                ? MemoryAllocator.MemoryUsage.LAZILY_ALLOCATED : MemoryAllocator.MemoryUsage.GPU_ONLY);
+    }
+
     public void destroy() {
         destroyObjects();
-        if (userCreated) renderer.removeImage(this);
+        if (userCreated && !aliased) renderer.removeImage(this);
     }
 
     public void destroyObjects() {
-        vkDestroyImageView(renderer.getDevice(), imageView, null);
+        if (imageView != VK_NULL_HANDLE) vkDestroyImageView(renderer.getDevice(), imageView, null);
         if (userCreated) {
             vkDestroyImage(renderer.getDevice(), image, null);
+            if (allocation != null) renderer.getMemoryAllocator().free(allocation);
         }
     }
 
@@ -74,14 +167,36 @@ public class Image {
         return result;
     }
 
+    protected long getImage() {
+        return image;
+    }
+
     protected int getImageFormat() {
         return imageFormat;
     }
 
+    protected int getAspectMask() { // Depth and stencil formats are not color images
+        return switch (imageFormat) {
+            case VK_FORMAT_D16_UNORM, VK_FORMAT_X8_D24_UNORM_PACK32, VK_FORMAT_D32_SFLOAT -> VK_IMAGE_ASPECT_DEPTH_BIT;
+            case VK_FORMAT_D16_UNORM_S8_UINT, VK_FORMAT_D24_UNORM_S8_UINT, VK_FORMAT_D32_SFLOAT_S8_UINT ->
+                    VK_IMAGE_ASPECT_DEPTH_BIT | VK_IMAGE_ASPECT_STENCIL_BIT;
+            case VK_FORMAT_S8_UINT -> VK_IMAGE_ASPECT_STENCIL_BIT;
+            default -> VK_IMAGE_ASPECT_COLOR_BIT;
+        };
+    }
+
     protected long getImageView() {
         return imageView;
     }
 
+    protected int getUsage() {
+        return usage;
+    }
+
+    public boolean isUserCreated() {
+        return userCreated;
+    }
+
     public int getWidth() {
         return width;
     }
@@ -89,4 +204,12 @@ public class Image {
     public int getHeight() {
         return height;
     }
+
+    public int getMipLevels() {
+        return mipLevels;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
 }
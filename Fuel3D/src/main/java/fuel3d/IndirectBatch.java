@@ -0,0 +1,78 @@
+package fuel3d;
+
+import org.lwjgl.vulkan.VkDrawIndexedIndirectCommand;
+
+import static org.lwjgl.system.MemoryUtil.memPutInt;
+import static org.lwjgl.vulkan.VK10.*;
+
+// VkDrawIndexedIndirectCommands written straight into mapped memory, one region per frame in flight,
+// drawn with a single vkCmdDrawIndexedIndirectCount. Meshes come from a MeshPool that is bound beforehand.
+public class IndirectBatch {
+    private final Fuel3D renderer;
+    private final Buffer buffer; // Per frame: maxDraws commands, then the draw count
+    private final int maxDraws;
+    private final long regionSize, countOffset;
+    private long regionStart; // Of the current frame
+    private int drawCount = 0;
+    private long lastFrameNumber = -1;
+
+    public static final int COMMAND_STRIDE = VkDrawIndexedIndirectCommand.SIZEOF;
+
+    public IndirectBatch(int maxDraws, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.maxDraws = maxDraws;
+        this.countOffset = (long) maxDraws * COMMAND_STRIDE;
+        this.regionSize = countOffset + Integer.BYTES; // Offsets stay multiples of 4 as the spec requires
+        buffer = new Buffer(regionSize * renderer.getFramesInFlight(),
+                VK_BUFFER_USAGE_INDIRECT_BUFFER_BIT | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT,
+                MemoryAllocator.MemoryUsage.CPU_TO_GPU, renderer);
+    }
+
+    private void beginFrameIfNeeded() { // The first draw in a frame starts over in that frame's region
+        if (renderer.getFrameNumber() == lastFrameNumber) return;
+        lastFrameNumber = renderer.getFrameNumber();
+        regionStart = regionSize * renderer.getFrameIndex();
+        drawCount = 0;
+    }
+
+    public void add(MeshPool.Mesh mesh) {
+        add(mesh, 1, 0);
+    }
+
+    public void add(MeshPool.Mesh mesh, int instanceCount, int firstInstance) { // firstInstance indexes an InstanceStream
+        beginFrameIfNeeded();
+        if (drawCount == maxDraws) renderer.getLogger().error("Indirect batch is full (" + maxDraws + " draws)");
+        long address = buffer.getMappedAddress() + regionStart + (long) drawCount * COMMAND_STRIDE;
+        memPutInt(address + VkDrawIndexedIndirectCommand.INDEXCOUNT, mesh.indexCount());
+        memPutInt(address + VkDrawIndexedIndirectCommand.INSTANCECOUNT, instanceCount);
+        memPutInt(address + VkDrawIndexedIndirectCommand.FIRSTINDEX, mesh.firstIndex());
+        memPutInt(address + VkDrawIndexedIndirectCommand.VERTEXOFFSET, mesh.vertexOffset());
+        memPutInt(address + VkDrawIndexedIndirectCommand.FIRSTINSTANCE, firstInstance);
+        drawCount++;
+    }
+
+    public void draw(CmdRecorder recorder) { // Every draw added this frame in one call
+        beginFrameIfNeeded();
+        if (drawCount == 0) return;
+        if (renderer.isDrawIndirectCountSupported()) {
+            memPutInt(buffer.getMappedAddress() + regionStart + countOffset, drawCount);
+            recorder.drawIndexedIndirectCount(buffer, regionStart, buffer, regionStart + countOffset, maxDraws, COMMAND_STRIDE);
+        }
+        else if (renderer.isMultiDrawIndirectSupported()) {
+            recorder.drawIndexedIndirect(buffer, regionStart, drawCount, COMMAND_STRIDE);
+        }
+        else {
+            for (int i = 0; i < drawCount; i++) {
+                recorder.drawIndexedIndirect(buffer, regionStart + (long) i * COMMAND_STRIDE, 1, COMMAND_STRIDE);
+            }
+        }
+    }
+
+    public int getDrawCount() { // Draws added this frame
+        return renderer.getFrameNumber() == lastFrameNumber ? drawCount : 0;
+    }
+
+    public void destroy() {
+        buffer.destroy();
+    }
+}
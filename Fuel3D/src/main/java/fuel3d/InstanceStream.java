@@ -0,0 +1,70 @@
+package fuel3d;
+
+import org.joml.Matrix4fc;
+
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.VK_BUFFER_USAGE_VERTEX_BUFFER_BIT;
+
+// Per frame instance transforms in a host visible vertex buffer, one region per frame in flight so frames on the GPU are not overwritten.
+// Declare the binding with VertexLayout.instanceBinding(binding, MATRIX_STRIDE) and VertexLayout.mat4Attribute.
+public class InstanceStream {
+    private final Fuel3D renderer;
+    private final Buffer buffer;
+    private final int maxInstances;
+    private final long regionSize;
+    private long regionStart; // Of the current frame
+    private int count = 0;
+    private long lastFrameNumber = -1;
+
+    public static final int MATRIX_STRIDE = 16 * Float.BYTES;
+
+    public InstanceStream(int maxInstances, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.maxInstances = maxInstances;
+        this.regionSize = (long) maxInstances * MATRIX_STRIDE;
+        buffer = new Buffer(regionSize * renderer.getFramesInFlight(), VK_BUFFER_USAGE_VERTEX_BUFFER_BIT,
+                MemoryAllocator.MemoryUsage.CPU_TO_GPU, renderer);
+    }
+
+    private void beginFrameIfNeeded() { // The first write in a frame starts over in that frame's region
+        if (renderer.getFrameNumber() == lastFrameNumber) return;
+        lastFrameNumber = renderer.getFrameNumber();
+        regionStart = regionSize * renderer.getFrameIndex();
+        count = 0;
+    }
+
+    public int add(Matrix4fc transform) { // Returns the instance index within this frame
+        beginFrameIfNeeded();
+        if (count == maxInstances) renderer.getLogger().error("Instance stream is full (" + maxInstances + " instances)");
+        transform.getToAddress(buffer.getMappedAddress() + regionStart + (long) count * MATRIX_STRIDE); // Column major, straight off-heap
+        return count++;
+    }
+
+    public int addAll(List<? extends Matrix4fc> transforms) { // Returns the index of the first one
+        beginFrameIfNeeded();
+        if (count + transforms.size() > maxInstances)
+            renderer.getLogger().error("Instance stream is full (" + maxInstances + " instances)");
+        int first = count;
+        long address = buffer.getMappedAddress() + regionStart + (long) count * MATRIX_STRIDE;
+        for (int i = 0; i < transforms.size(); i++) {
+            transforms.get(i).getToAddress(address);
+            address += MATRIX_STRIDE;
+        }
+        count += transforms.size();
+        return first;
+    }
+
+    public void bind(CmdRecorder recorder, int binding) { // Instance 0 of the draw reads the frame's first transform
+        beginFrameIfNeeded();
+        recorder.bindVertexBuffer(binding, buffer, regionStart);
+    }
+
+    public int getCount() { // Transforms written this frame
+        return renderer.getFrameNumber() == lastFrameNumber ? count : 0;
+    }
+
+    public void destroy() {
+        buffer.destroy();
+    }
+}
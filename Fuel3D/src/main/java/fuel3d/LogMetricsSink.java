@@ -0,0 +1,20 @@
+package fuel3d;
+
+public class LogMetricsSink implements FrameMetrics.Sink { // Frame time percentiles through the renderer's Logger
+    private final Logger logger;
+
+    public LogMetricsSink(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void export(FrameMetrics.Snapshot snapshot) {
+        StringBuilder message = new StringBuilder("Frame metrics (ms, p50/p99/p99.9/max):");
+        for (FrameMetrics.PhaseSummary phase : snapshot.phases()) {
+            if (phase.count() == 0) continue;
+            message.append(String.format(" %s %.2f/%.2f/%.2f/%.2f", phase.phase(),
+                    phase.p50Millis(), phase.p99Millis(), phase.p999Millis(), phase.maxMillis()));
+        }
+        logger.log(Logger.MessageType.INFO, message.toString());
+    }
+}
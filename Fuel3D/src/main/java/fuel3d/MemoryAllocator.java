@@ -0,0 +1,465 @@
+package fuel3d;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+import static org.lwjgl.vulkan.VK11.*;
+
+public class MemoryAllocator { // Sub-allocates buffers and images from large per memory type blocks
+    private final Fuel3D renderer;
+    private final VkPhysicalDeviceMemoryProperties memoryProperties;
+    private final long blockSize;
+    private final long bufferImageGranularity;
+    private final int maxAllocationCount;
+    private final List<List<MemoryBlock>> blocks; // Indexed by memory type
+    private final long[] dedicatedBytes, dedicatedCounts; // Indexed by heap
+    private int vkAllocationCount = 0;
+
+    protected MemoryAllocator(long blockSize, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.blockSize = blockSize;
+
+        memoryProperties = VkPhysicalDeviceMemoryProperties.malloc();
+        vkGetPhysicalDeviceMemoryProperties(renderer.getPhysicalDevice(), memoryProperties);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(renderer.getPhysicalDevice(), properties);
+            bufferImageGranularity = Math.max(1, properties.limits().bufferImageGranularity());
+            maxAllocationCount = properties.limits().maxMemoryAllocationCount();
+        }
+
+        blocks = new ArrayList<>(memoryProperties.memoryTypeCount());
+        for (int i = 0; i < memoryProperties.memoryTypeCount(); i++) {
+            blocks.add(new ArrayList<>());
+        }
+        dedicatedBytes = new long[memoryProperties.memoryHeapCount()];
+        dedicatedCounts = new long[memoryProperties.memoryHeapCount()];
+    }
+
+    protected Allocation allocateBuffer(long buffer, MemoryUsage usage) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryDedicatedRequirements dedicatedRequirements = VkMemoryDedicatedRequirements.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL);
+            VkMemoryRequirements2 requirements = VkMemoryRequirements2.malloc(stack)
+                    .sType$Default()
+                    .pNext(dedicatedRequirements.address());
+            VkBufferMemoryRequirementsInfo2 requirementsInfo = VkBufferMemoryRequirementsInfo2.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .buffer(buffer);
+            vkGetBufferMemoryRequirements2(renderer.getDevice(), requirementsInfo, requirements);
+
+            boolean dedicated = dedicatedRequirements.prefersDedicatedAllocation() || dedicatedRequirements.requiresDedicatedAllocation();
+            VkMemoryRequirements memoryRequirements = requirements.memoryRequirements();
+            Allocation allocation = allocate(memoryRequirements.memoryTypeBits(), memoryRequirements.size(), memoryRequirements.alignment(),
+                    usage, true, dedicated, VK_NULL_HANDLE, buffer);
+            renderer.chErr(vkBindBufferMemory(renderer.getDevice(), buffer, allocation.memory, allocation.offset));
+            return allocation;
+        }
+    }
+
+    protected Allocation allocateImage(long image, MemoryUsage usage) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryDedicatedRequirements dedicatedRequirements = VkMemoryDedicatedRequirements.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL);
+            VkMemoryRequirements2 requirements = VkMemoryRequirements2.malloc(stack)
+                    .sType$Default()
+                    .pNext(dedicatedRequirements.address());
+            VkImageMemoryRequirementsInfo2 requirementsInfo = VkImageMemoryRequirementsInfo2.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .image(image);
+            vkGetImageMemoryRequirements2(renderer.getDevice(), requirementsInfo, requirements);
+
+            boolean dedicated = dedicatedRequirements.prefersDedicatedAllocation() || dedicatedRequirements.requiresDedicatedAllocation();
+            VkMemoryRequirements memoryRequirements = requirements.memoryRequirements();
+            Allocation allocation = allocate(memoryRequirements.memoryTypeBits(), memoryRequirements.size(), memoryRequirements.alignment(),
+                    usage, false, dedicated, image, VK_NULL_HANDLE);
+            renderer.chErr(vkBindImageMemory(renderer.getDevice(), image, allocation.memory, allocation.offset));
+            return allocation;
+        }
+    }
+
+    // Memory several optimal tiling images are bound to, see RenderGraph. Binding is up to the caller, free it like any other
+    protected Allocation allocateAliased(long size, long alignment, int memoryTypeBits) {
+        return allocate(memoryTypeBits, size, alignment, MemoryUsage.GPU_ONLY, false, false, VK_NULL_HANDLE, VK_NULL_HANDLE);
+    }
+
+    private synchronized Allocation allocate(int memoryTypeBits, long size, long alignment, MemoryUsage usage, boolean linear,
+                                             boolean dedicated, long dedicatedImage, long dedicatedBuffer) {
+        int memoryType = findMemoryType(memoryTypeBits, usage);
+
+        if (dedicated || size > blockSize / 2) { // Big resources get their own allocation instead of wasting a block
+            return allocateDedicated(memoryType, size, dedicatedImage, dedicatedBuffer);
+        }
+
+        for (MemoryBlock block : blocks.get(memoryType)) {
+            Allocation allocation = block.allocate(size, alignment, linear);
+            if (allocation != null) return allocation;
+        }
+
+        MemoryBlock block = new MemoryBlock(memoryType, Math.min(blockSize, heapSizeOf(memoryType)));
+        blocks.get(memoryType).add(block);
+        Allocation allocation = block.allocate(size, alignment, linear);
+        if (allocation == null) renderer.getLogger().error("Failed to sub-allocate " + size + " bytes from a new memory block");
+        return allocation;
+    }
+
+    private Allocation allocateDedicated(int memoryType, long size, long image, long buffer) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryDedicatedAllocateInfo dedicatedInfo = VkMemoryDedicatedAllocateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .image(image)
+                    .buffer(buffer);
+            long memory = allocateMemory(stack, memoryType, size, dedicatedInfo.address());
+            long mapped = mapMemory(stack, memoryType, memory, size);
+
+            int heap = memoryProperties.memoryTypes(memoryType).heapIndex();
+            dedicatedBytes[heap] += size;
+            dedicatedCounts[heap]++;
+            return new Allocation(null, null, memory, 0, size, mapped, memoryType);
+        }
+    }
+
+    public synchronized void free(Allocation allocation) {
+        if (allocation.block == null) {
+            int heap = memoryProperties.memoryTypes(allocation.memoryType).heapIndex();
+            dedicatedBytes[heap] -= allocation.size;
+            dedicatedCounts[heap]--;
+            freeMemory(allocation.memory);
+            return;
+        }
+
+        MemoryBlock block = allocation.block;
+        block.free(allocation.chunk);
+        List<MemoryBlock> typeBlocks = blocks.get(block.memoryType);
+        if (block.isEmpty() && typeBlocks.size() > 1) { // Keep one empty block around to avoid allocation churn
+            typeBlocks.remove(block);
+            freeMemory(block.memory);
+        }
+    }
+
+    private long allocateMemory(MemoryStack stack, int memoryType, long size, long pNext) {
+        LongBuffer lb = stack.mallocLong(1);
+
+        if (vkAllocationCount >= maxAllocationCount) {
+            renderer.getLogger().log(Logger.MessageType.WARNING,
+                    "Exceeding maxMemoryAllocationCount (" + maxAllocationCount + "), consider a larger memory block size");
+        }
+
+        VkMemoryAllocateInfo allocateInfo = VkMemoryAllocateInfo.malloc(stack)
+                .sType$Default()
+                .pNext(pNext)
+                .allocationSize(size)
+                .memoryTypeIndex(memoryType);
+        renderer.chErr(vkAllocateMemory(renderer.getDevice(), allocateInfo, null, lb));
+        vkAllocationCount++;
+        return lb.get(0);
+    }
+
+    private long mapMemory(MemoryStack stack, int memoryType, long memory, long size) { // Host visible memory stays mapped for its whole lifetime
+        if ((memoryProperties.memoryTypes(memoryType).propertyFlags() & VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT) == 0) {
+            return NULL;
+        }
+        PointerBuffer pb = stack.mallocPointer(1);
+        renderer.chErr(vkMapMemory(renderer.getDevice(), memory, 0, size, 0, pb));
+        return pb.get(0);
+    }
+
+    private void freeMemory(long memory) {
+        vkFreeMemory(renderer.getDevice(), memory, null); // Implicitly unmaps
+        vkAllocationCount--;
+    }
+
+    private int findMemoryType(int typeFilter, MemoryUsage usage) {
+        int type = findMemoryType(typeFilter, usage.required | usage.preferred);
+        if (type < 0) type = findMemoryType(typeFilter, usage.required);
+        if (type < 0) renderer.getLogger().error("Failed to find suitable memory type for " + usage);
+        return type;
+    }
+
+    private int findMemoryType(int typeFilter, int properties) {
+        for (int i = 0; i < memoryProperties.memoryTypeCount(); i++) {
+            if ((typeFilter & (1 << i)) != 0 && (memoryProperties.memoryTypes(i).propertyFlags() & properties) == properties) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private long heapSizeOf(int memoryType) {
+        return memoryProperties.memoryHeaps(memoryProperties.memoryTypes(memoryType).heapIndex()).size();
+    }
+
+    public synchronized HeapStatistics[] getStatistics() {
+        HeapStatistics[] statistics = new HeapStatistics[memoryProperties.memoryHeapCount()];
+        for (int heap = 0; heap < statistics.length; heap++) {
+            int blockCount = 0, allocationCount = 0;
+            long blockBytes = 0, usedBytes = 0, freeBytes = 0, largestFreeRange = 0;
+            for (int type = 0; type < memoryProperties.memoryTypeCount(); type++) {
+                if (memoryProperties.memoryTypes(type).heapIndex() != heap) continue;
+                for (MemoryBlock block : blocks.get(type)) {
+                    blockCount++;
+                    blockBytes += block.size;
+                    for (Chunk chunk = block.ranges.getHead(); chunk != null; chunk = chunk.next) {
+                        if (chunk.free) {
+                            freeBytes += chunk.size;
+                            largestFreeRange = Math.max(largestFreeRange, chunk.size);
+                        }
+                        else {
+                            allocationCount++;
+                            usedBytes += chunk.size;
+                        }
+                    }
+                }
+            }
+            statistics[heap] = new HeapStatistics(heap, memoryProperties.memoryHeaps(heap).size(),
+                    blockCount, blockBytes, allocationCount, usedBytes, freeBytes, largestFreeRange,
+                    (int) dedicatedCounts[heap], dedicatedBytes[heap]);
+        }
+        return statistics;
+    }
+
+    public synchronized int getVkAllocationCount() {
+        return vkAllocationCount;
+    }
+
+    protected synchronized void destroy() {
+        for (HeapStatistics heapStatistics : getStatistics()) {
+            if (heapStatistics.allocationCount() + heapStatistics.dedicatedCount() > 0) {
+                renderer.getLogger().log(Logger.MessageType.WARNING, "Memory leaked on destroy: " + heapStatistics);
+            }
+        }
+        for (List<MemoryBlock> typeBlocks : blocks) {
+            for (MemoryBlock block : typeBlocks) {
+                freeMemory(block.memory);
+            }
+            typeBlocks.clear();
+        }
+        memoryProperties.free();
+    }
+
+    private static long alignUp(long value, long alignment) {
+        return (value + alignment - 1) & -alignment;
+    }
+
+    private class MemoryBlock {
+        private final int memoryType;
+        private final long memory, size, mapped;
+        private final FreeList ranges;
+
+        private MemoryBlock(int memoryType, long size) {
+            this.memoryType = memoryType;
+            this.size = size;
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                memory = allocateMemory(stack, memoryType, size, NULL);
+                mapped = mapMemory(stack, memoryType, memory, size);
+            }
+            ranges = new FreeList(size, bufferImageGranularity);
+        }
+
+        private Allocation allocate(long size, long alignment, boolean linear) {
+            Chunk chunk = ranges.allocate(size, alignment, linear);
+            if (chunk == null) return null;
+            return new Allocation(this, chunk, memory, chunk.offset, size, mapped == NULL ? NULL : mapped + chunk.offset, memoryType);
+        }
+
+        private void free(Chunk chunk) {
+            ranges.free(chunk);
+        }
+
+        private boolean isEmpty() {
+            return ranges.isEmpty();
+        }
+    }
+
+    // The ranges of one block, without the device memory behind them
+    static class FreeList {
+        private final long granularity; // bufferImageGranularity
+        private Chunk head; // Chunks are kept in offset order, adjacent free chunks are always merged
+
+        FreeList(long size, long granularity) {
+            this.granularity = granularity;
+            head = new Chunk(0, size);
+        }
+
+        Chunk allocate(long size, long alignment, boolean linear) { // First fit, null if no free range has room
+            for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+                if (!chunk.free || chunk.size < size) continue;
+
+                long offset = alignUp(chunk.offset, alignment);
+                // Linear and optimal resources must not share a bufferImageGranularity page
+                if (chunk.prev != null && chunk.prev.linear != linear
+                        && samePage(chunk.prev.offset + chunk.prev.size - 1, offset)) {
+                    offset = alignUp(offset, granularity);
+                }
+                long end = offset + size;
+                if (end > chunk.offset + chunk.size) continue;
+                if (chunk.next != null && chunk.next.linear != linear && samePage(end - 1, chunk.next.offset)) continue;
+
+                if (offset > chunk.offset) { // Leading padding stays free
+                    Chunk padding = new Chunk(chunk.offset, offset - chunk.offset);
+                    insertBefore(chunk, padding);
+                    chunk.offset = offset;
+                    chunk.size -= padding.size;
+                }
+                if (chunk.size > size) { // Split off the remainder
+                    Chunk remainder = new Chunk(end, chunk.size - size);
+                    insertAfter(chunk, remainder);
+                    chunk.size = size;
+                }
+                chunk.free = false;
+                chunk.linear = linear;
+                return chunk;
+            }
+            return null;
+        }
+
+        void free(Chunk chunk) {
+            chunk.free = true;
+            if (chunk.next != null && chunk.next.free) {
+                chunk.size += chunk.next.size;
+                remove(chunk.next);
+            }
+            if (chunk.prev != null && chunk.prev.free) {
+                chunk.prev.size += chunk.size;
+                remove(chunk);
+            }
+        }
+
+        boolean isEmpty() {
+            return head.free && head.next == null;
+        }
+
+        Chunk getHead() {
+            return head;
+        }
+
+        private boolean samePage(long a, long b) {
+            return (a & -granularity) == (b & -granularity);
+        }
+
+        private void insertBefore(Chunk chunk, Chunk newChunk) {
+            newChunk.prev = chunk.prev;
+            newChunk.next = chunk;
+            if (chunk.prev != null) chunk.prev.next = newChunk;
+            else head = newChunk;
+            chunk.prev = newChunk;
+        }
+
+        private void insertAfter(Chunk chunk, Chunk newChunk) {
+            newChunk.prev = chunk;
+            newChunk.next = chunk.next;
+            if (chunk.next != null) chunk.next.prev = newChunk;
+            chunk.next = newChunk;
+        }
+
+        private void remove(Chunk chunk) {
+            if (chunk.prev != null) chunk.prev.next = chunk.next;
+            else head = chunk.next;
+            if (chunk.next != null) chunk.next.prev = chunk.prev;
+        }
+    }
+
+    static class Chunk {
+        private long offset, size;
+        private boolean free = true, linear;
+        private Chunk prev, next;
+
+        private Chunk(long offset, long size) {
+            this.offset = offset;
+            this.size = size;
+        }
+
+        long getOffset() {
+            return offset;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        boolean isFree() {
+            return free;
+        }
+
+        Chunk getNext() {
+            return next;
+        }
+    }
+
+    public static class Allocation {
+        private final MemoryBlock block; // null if dedicated
+        private final Chunk chunk;
+        private final long memory, offset, size, mappedAddress;
+        private final int memoryType;
+
+        private Allocation(MemoryBlock block, Chunk chunk, long memory, long offset, long size, long mappedAddress, int memoryType) {
+            this.block = block;
+            this.chunk = chunk;
+            this.memory = memory;
+            this.offset = offset;
+            this.size = size;
+            this.mappedAddress = mappedAddress;
+            this.memoryType = memoryType;
+        }
+
+        protected long getMemory() {
+            return memory;
+        }
+
+        protected long getOffset() {
+            return offset;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        protected long getMappedAddress() { // NULL if not host visible
+            return mappedAddress;
+        }
+
+        public boolean isMapped() {
+            return mappedAddress != NULL;
+        }
+
+        public boolean isDedicated() {
+            return block == null;
+        }
+    }
+
+    public enum MemoryUsage {
+        GPU_ONLY(VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, 0),
+        CPU_TO_GPU(VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT, VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT),
+        GPU_TO_CPU(VK_MEMORY_PROPERTY_HOST_VISIBLE_BIT | VK_MEMORY_PROPERTY_HOST_COHERENT_BIT, VK_MEMORY_PROPERTY_HOST_CACHED_BIT),
+        // Transient attachments, tile based GPUs never back lazily allocated memory if the contents are not stored
+        LAZILY_ALLOCATED(VK_MEMORY_PROPERTY_DEVICE_LOCAL_BIT, VK_MEMORY_PROPERTY_LAZILY_ALLOCATED_BIT);
+
+        private final int required, preferred;
+
+        MemoryUsage(int required, int preferred) {
+            this.required = required;
+            this.preferred = preferred;
+        }
+    }
+
+    public record HeapStatistics(int heapIndex, long heapSize, int blockCount, long blockBytes,
+                                 int allocationCount, long usedBytes, long freeBytes, long largestFreeRange,
+                                 int dedicatedCount, long dedicatedBytes) {
+        public double fragmentation() { // 0 = all free space is one contiguous range
+            return freeBytes == 0 ? 0.0 : 1.0 - (double) largestFreeRange / freeBytes;
+        }
+    }
+}
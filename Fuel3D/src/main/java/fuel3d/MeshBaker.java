@@ -0,0 +1,146 @@
+package fuel3d;
+
+import org.joml.Vector3f;
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.assimp.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static org.lwjgl.assimp.Assimp.*;
+import static org.lwjgl.system.MemoryUtil.*;
+
+// Offline converter from anything assimp imports to MeshFile, so the runtime never parses model formats.
+// Usage: MeshBaker <input model> <output .vmesh>, or gradle :VRuntime:bakeMesh -PmeshIn=... -PmeshOut=...
+public class MeshBaker {
+    private static final int IMPORT_FLAGS = aiProcess_Triangulate | aiProcess_JoinIdenticalVertices | aiProcess_GenSmoothNormals
+            | aiProcess_PreTransformVertices | aiProcess_ImproveCacheLocality | aiProcess_SortByPType | aiProcess_FlipUVs;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: MeshBaker <input model> <output .vmesh>");
+            System.exit(1);
+        }
+        Path output = Paths.get(args[1]);
+        Result result = bake(Paths.get(args[0]), output);
+        System.out.printf("Baked %s: %d vertices, %d indices, %d submeshes in %.1f ms%n",
+                output.getFileName(), result.vertexCount(), result.indexCount(), result.submeshCount(), result.millis());
+    }
+
+    public static Result bake(Path input, Path output) throws IOException { // Prints nothing, main reports the result
+        long start = System.nanoTime();
+        AIScene scene = aiImportFile(input.toString(), IMPORT_FLAGS);
+        if (scene == null || scene.mRootNode() == null) throw new IOException("assimp could not import " + input + ": " + aiGetErrorString());
+
+        try {
+            PointerBuffer meshes = scene.mMeshes();
+            int meshCount = scene.mNumMeshes(), submeshCount = 0, vertexCount = 0, indexCount = 0;
+            for (int i = 0; i < meshCount; i++) { // Sizes first, so everything is written in place
+                AIMesh mesh = AIMesh.create(meshes.get(i));
+                if (!isTriangleMesh(mesh)) continue;
+                submeshCount++;
+                vertexCount += mesh.mNumVertices();
+                AIFace.Buffer faces = mesh.mFaces();
+                for (int f = 0; f < mesh.mNumFaces(); f++) {
+                    if (faces.get(f).mNumIndices() == 3) indexCount += 3;
+                }
+            }
+            if (submeshCount == 0) throw new IOException(input + " contains no triangle meshes");
+
+            int vertexOffset = MeshFile.vertexDataOffset(submeshCount);
+            long size = vertexOffset + (long) vertexCount * MeshFile.VERTEX_STRIDE + (long) indexCount * Integer.BYTES;
+            ByteBuffer file = memCalloc((int) size).order(ByteOrder.LITTLE_ENDIAN);
+            try {
+                Vector3f min = new Vector3f(Float.POSITIVE_INFINITY), max = new Vector3f(Float.NEGATIVE_INFINITY);
+                int vertex = 0, index = 0, submesh = 0;
+                long indexStart = vertexOffset + (long) vertexCount * MeshFile.VERTEX_STRIDE;
+                for (int i = 0; i < meshCount; i++) {
+                    AIMesh mesh = AIMesh.create(meshes.get(i));
+                    if (!isTriangleMesh(mesh)) continue;
+
+                    Vector3f meshMin = new Vector3f(Float.POSITIVE_INFINITY), meshMax = new Vector3f(Float.NEGATIVE_INFINITY);
+                    AIVector3D.Buffer positions = mesh.mVertices();
+                    AIVector3D.Buffer normals = mesh.mNormals();
+                    AIVector3D.Buffer uvs = mesh.mTextureCoords(0);
+                    for (int v = 0; v < mesh.mNumVertices(); v++) {
+                        int offset = vertexOffset + (vertex + v) * MeshFile.VERTEX_STRIDE;
+                        AIVector3D position = positions.get(v);
+                        file.putFloat(offset, position.x()).putFloat(offset + 4, position.y()).putFloat(offset + 8, position.z());
+                        if (normals != null) {
+                            AIVector3D normal = normals.get(v);
+                            file.putFloat(offset + 12, normal.x()).putFloat(offset + 16, normal.y()).putFloat(offset + 20, normal.z());
+                        }
+                        if (uvs != null) {
+                            AIVector3D uv = uvs.get(v);
+                            file.putFloat(offset + 24, uv.x()).putFloat(offset + 28, uv.y());
+                        }
+                        meshMin.set(Math.min(meshMin.x, position.x()), Math.min(meshMin.y, position.y()), Math.min(meshMin.z, position.z()));
+                        meshMax.set(Math.max(meshMax.x, position.x()), Math.max(meshMax.y, position.y()), Math.max(meshMax.z, position.z()));
+                    }
+
+                    int firstIndex = index;
+                    AIFace.Buffer faces = mesh.mFaces();
+                    for (int f = 0; f < mesh.mNumFaces(); f++) {
+                        AIFace face = faces.get(f);
+                        if (face.mNumIndices() != 3) continue;
+                        for (int k = 0; k < 3; k++) {
+                            file.putInt((int) (indexStart + (long) index * Integer.BYTES), face.mIndices().get(k));
+                            index++;
+                        }
+                    }
+
+                    int submeshOffset = MeshFile.HEADER_SIZE + submesh * MeshFile.SUBMESH_SIZE;
+                    file.putInt(submeshOffset, firstIndex)
+                            .putInt(submeshOffset + 4, index - firstIndex)
+                            .putInt(submeshOffset + 8, vertex)
+                            .putInt(submeshOffset + 12, mesh.mMaterialIndex());
+                    putVector(file, submeshOffset + 16, meshMin);
+                    putVector(file, submeshOffset + 28, meshMax);
+                    min.min(meshMin);
+                    max.max(meshMax);
+                    vertex += mesh.mNumVertices();
+                    submesh++;
+                }
+
+                file.putInt(0, MeshFile.MAGIC)
+                        .putInt(4, MeshFile.VERSION)
+                        .putInt(8, MeshFile.VERTEX_STRIDE)
+                        .putInt(12, vertex)
+                        .putInt(16, index)
+                        .putInt(20, submeshCount);
+                putVector(file, 24, min);
+                putVector(file, 36, max);
+
+                Path directory = output.toAbsolutePath().getParent();
+                if (directory != null) Files.createDirectories(directory);
+                try (FileChannel channel = FileChannel.open(output, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (file.hasRemaining()) channel.write(file);
+                }
+                return new Result(vertex, index, submeshCount, (System.nanoTime() - start) / 1e6);
+            }
+            finally {
+                memFree(file);
+            }
+        }
+        finally {
+            aiReleaseImport(scene);
+        }
+    }
+
+    public record Result(int vertexCount, int indexCount, int submeshCount, double millis) { }
+
+    private static boolean isTriangleMesh(AIMesh mesh) { // Point and line meshes left over after triangulation are skipped
+        return (mesh.mPrimitiveTypes() & aiPrimitiveType_TRIANGLE) != 0;
+    }
+
+    private static void putVector(ByteBuffer file, int offset, Vector3f vector) {
+        file.putFloat(offset, vector.x).putFloat(offset + 4, vector.y).putFloat(offset + 8, vector.z);
+    }
+}
@@ -0,0 +1,103 @@
+package fuel3d;
+
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+// Engine native mesh format written by MeshBaker, all little endian:
+//   header:    magic, version, vertex stride, vertex count, index count, submesh count, bounds (min xyz, max xyz)
+//   submeshes: first index, index count, vertex offset, material index, bounds (min xyz, max xyz)
+//   vertices:  interleaved position vec3, normal vec3, uv vec2, starting at a 16 byte aligned offset
+//   indices:   uint32, relative to the submesh's vertex offset
+// Loading maps the file and uploads straight from the mapping, so no vertex data passes through the Java heap.
+public class MeshFile {
+    public static final int MAGIC = 0x48534D56; // "VMSH"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 6 * Integer.BYTES + 6 * Float.BYTES;
+    public static final int SUBMESH_SIZE = 4 * Integer.BYTES + 6 * Float.BYTES;
+    public static final int VERTEX_STRIDE = 8 * Float.BYTES;
+
+    private final List<Submesh> submeshes;
+    private final Vector3fc boundsMin, boundsMax;
+
+    private MeshFile(List<Submesh> submeshes, Vector3fc boundsMin, Vector3fc boundsMax) {
+        this.submeshes = submeshes;
+        this.boundsMin = boundsMin;
+        this.boundsMax = boundsMax;
+    }
+
+    public static VertexLayout vertexLayout(int binding) { // Locations 0 position, 1 normal, 2 uv
+        return new VertexLayout()
+                .binding(binding, VERTEX_STRIDE)
+                .attribute(0, binding, VertexLayout.AttributeFormat.VEC3, 0)
+                .attribute(1, binding, VertexLayout.AttributeFormat.VEC3, 3 * Float.BYTES)
+                .attribute(2, binding, VertexLayout.AttributeFormat.VEC2, 6 * Float.BYTES);
+    }
+
+    protected static int vertexDataOffset(int submeshCount) {
+        return (HEADER_SIZE + submeshCount * SUBMESH_SIZE + 15) & ~15;
+    }
+
+    // Adds every submesh to pool, which needs a vertex stride of VERTEX_STRIDE
+    public static MeshFile load(Path path, MeshPool pool, Fuel3D renderer) {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (file.remaining() < HEADER_SIZE || file.getInt(0) != MAGIC)
+                renderer.getLogger().error(path + " is not a mesh file");
+            if (file.getInt(4) != VERSION)
+                renderer.getLogger().error(path + " has mesh format version " + file.getInt(4) + ", expected " + VERSION + ", rebake it");
+            int vertexStride = file.getInt(8), vertexCount = file.getInt(12), indexCount = file.getInt(16), submeshCount = file.getInt(20);
+            if (vertexStride != VERTEX_STRIDE) renderer.getLogger().error(path + " has an unsupported vertex stride " + vertexStride);
+
+            int vertexOffset = vertexDataOffset(submeshCount);
+            long vertexBytes = (long) vertexCount * vertexStride, indexBytes = (long) indexCount * Integer.BYTES;
+            if (file.remaining() < vertexOffset + vertexBytes + indexBytes) renderer.getLogger().error(path + " is truncated");
+
+            ByteBuffer vertices = file.slice(vertexOffset, (int) vertexBytes);
+            ByteBuffer indices = file.slice((int) (vertexOffset + vertexBytes), (int) indexBytes);
+            MeshPool.Mesh whole = pool.add(vertices, indices); // Copied into staging memory directly from the mapping
+
+            List<Submesh> submeshes = new ArrayList<>(submeshCount);
+            for (int i = 0; i < submeshCount; i++) {
+                int offset = HEADER_SIZE + i * SUBMESH_SIZE;
+                MeshPool.Mesh mesh = new MeshPool.Mesh(whole.firstIndex() + file.getInt(offset),
+                        file.getInt(offset + 4), whole.vertexOffset() + file.getInt(offset + 8));
+                submeshes.add(new Submesh(mesh, file.getInt(offset + 12), readVector(file, offset + 16), readVector(file, offset + 28)));
+            }
+            renderer.getLogger().log(Logger.MessageType.VERBOSE, String.format("Mesh %s (%d vertices, %d submeshes) loaded in %.2f ms",
+                    path.getFileName(), vertexCount, submeshCount, (System.nanoTime() - start) / 1e6));
+            return new MeshFile(List.copyOf(submeshes), readVector(file, 24), readVector(file, 36));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Vector3f readVector(ByteBuffer file, int offset) {
+        return new Vector3f(file.getFloat(offset), file.getFloat(offset + 4), file.getFloat(offset + 8));
+    }
+
+    public List<Submesh> getSubmeshes() {
+        return submeshes;
+    }
+
+    public Vector3fc getBoundsMin() {
+        return boundsMin;
+    }
+
+    public Vector3fc getBoundsMax() {
+        return boundsMax;
+    }
+
+    public record Submesh(MeshPool.Mesh mesh, int materialIndex, Vector3fc boundsMin, Vector3fc boundsMax) { }
+}
@@ -0,0 +1,76 @@
+package fuel3d;
+
+import java.nio.ByteBuffer;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+// Shared vertex and index buffers for every mesh of one vertex layout, so one bind serves any number of indirect draws
+public class MeshPool {
+    private final Fuel3D renderer;
+    private final Buffer vertexBuffer, indexBuffer;
+    private final int vertexStride;
+    private final int maxVertices, maxIndices;
+    private int vertexCount = 0, indexCount = 0;
+
+    public MeshPool(int vertexStride, int maxVertices, int maxIndices, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.vertexStride = vertexStride;
+        this.maxVertices = maxVertices;
+        this.maxIndices = maxIndices;
+        vertexBuffer = new Buffer((long) vertexStride * maxVertices,
+                VK_BUFFER_USAGE_VERTEX_BUFFER_BIT | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                MemoryAllocator.MemoryUsage.GPU_ONLY, renderer);
+        indexBuffer = new Buffer((long) Integer.BYTES * maxIndices,
+                VK_BUFFER_USAGE_INDEX_BUFFER_BIT | VK_BUFFER_USAGE_STORAGE_BUFFER_BIT | VK_BUFFER_USAGE_TRANSFER_DST_BIT,
+                MemoryAllocator.MemoryUsage.GPU_ONLY, renderer);
+    }
+
+    // vertices holds whole vertices of vertexStride bytes, indices are uint32 and relative to the mesh's first vertex
+    public Mesh add(ByteBuffer vertices, ByteBuffer indices) {
+        if (vertices.remaining() % vertexStride != 0) renderer.getLogger().error("Vertex data is not a multiple of the vertex stride");
+        int meshVertices = vertices.remaining() / vertexStride;
+        int meshIndices = indices.remaining() / Integer.BYTES;
+        if (vertexCount + meshVertices > maxVertices || indexCount + meshIndices > maxIndices)
+            renderer.getLogger().error("Mesh pool is full");
+
+        vertexBuffer.upload(vertices, (long) vertexCount * vertexStride);
+        indexBuffer.upload(indices, (long) indexCount * Integer.BYTES);
+        Mesh mesh = new Mesh(indexCount, meshIndices, vertexCount);
+        vertexCount += meshVertices;
+        indexCount += meshIndices;
+        return mesh;
+    }
+
+    public void bind(CmdRecorder recorder, int binding) {
+        recorder.bindVertexBuffer(binding, vertexBuffer, 0);
+        recorder.bindIndexBuffer(indexBuffer, 0, CmdRecorder.IndexType.UINT32);
+    }
+
+    public void clear() { // Meshes already handed out become invalid, frames in flight must be done with them
+        vertexCount = 0;
+        indexCount = 0;
+    }
+
+    public void destroy() {
+        vertexBuffer.destroy();
+        indexBuffer.destroy();
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getIndexCount() {
+        return indexCount;
+    }
+
+    public Buffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
+    public Buffer getIndexBuffer() {
+        return indexBuffer;
+    }
+
+    public record Mesh(int firstIndex, int indexCount, int vertexOffset) { }
+}
@@ -4,6 +4,7 @@ import org.lwjgl.system.MemoryStack;
 import org.lwjgl.vulkan.*;
 
 import java.nio.LongBuffer;
+import java.util.List;
 
 import static org.lwjgl.system.MemoryUtil.*;
 import static org.lwjgl.vulkan.KHRSwapchain.*;
@@ -13,26 +14,143 @@ public class Pipeline {
     private final Fuel3D renderer;
     private final Shader vertexShader, fragmentShader;
     private long graphicsPipeline, pipelineLayout, renderpass;
-    private final int targetImageFormat;
+    private final List<Integer> targetImageFormats; // One per color attachment
+    private final int depthFormat; // VK_FORMAT_UNDEFINED without a depth attachment
+    private final int targetFinalLayout;
+    private final int samples; // VK_SAMPLE_COUNT_1_BIT renders to the targets directly, otherwise they are resolve attachments
+    private final VertexLayout vertexLayout;
+    private final PipelineKey key;
+    private final PipelineRegistry.RenderPassKey renderPassKey;
+    private final List<DescriptorLayout> descriptorLayouts;
+    private final int pushConstantStages, pushConstantSize;
+    private final DepthTest depthTest;
+    private final boolean depthWrite, depthPrepass;
+    private final boolean depthOnly; // The pre-pass pipeline of createDepthPrepass, without fragment shader and color output
+    private PipelineRegistry.LayoutKey layoutKey;
     private final float[] clearColor = new float[4]; // TODO: make this setting
 
     public Pipeline(Shader vertexShader, Shader fragmentShader, Window target, Fuel3D renderer) {
+        this(vertexShader, fragmentShader, target, new Settings(), renderer);
+    }
+
+    public Pipeline(Shader vertexShader, Shader fragmentShader, Window target, Settings settings, Fuel3D renderer) {
+        this(vertexShader, fragmentShader, List.of(target.getImageFormat()), depthFormatOf(settings, renderer),
+                VK_IMAGE_LAYOUT_PRESENT_SRC_KHR, settings, false, renderer);
+    }
+
+    public Pipeline(Shader vertexShader, Shader fragmentShader, Image target, Fuel3D renderer) { // Offscreen target
+        this(vertexShader, fragmentShader, target, new Settings(), renderer);
+    }
+
+    public Pipeline(Shader vertexShader, Shader fragmentShader, Image target, Settings settings, Fuel3D renderer) {
+        this(vertexShader, fragmentShader, List.of(target.getImageFormat()), depthFormatOf(settings, renderer),
+                VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, settings, false, renderer);
+    }
+
+    // For a RenderGraph pass, compatible with the render pass the graph creates for it. fragmentShader may be null for depth only passes
+    public Pipeline(Shader vertexShader, Shader fragmentShader, RenderGraph.Pass pass, Settings settings, Fuel3D renderer) {
+        this(vertexShader, fragmentShader, pass.getColorFormats(), depthFormatOf(pass, settings, renderer),
+                VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, settings, false, renderer);
+    }
+
+    private Pipeline(Shader vertexShader, Shader fragmentShader, List<Integer> targetImageFormats, int depthFormat,
+                     int targetFinalLayout, Settings settings, boolean depthOnly, Fuel3D renderer) {
         this.renderer = renderer;
         this.vertexShader = vertexShader;
         this.fragmentShader = fragmentShader;
-        this.targetImageFormat = target.getImageFormat();
+        this.targetImageFormats = List.copyOf(targetImageFormats);
+        this.depthFormat = depthFormat;
+        this.targetFinalLayout = targetFinalLayout;
+        this.samples = renderer.getSampleCount(settings.samples);
+        this.vertexLayout = settings.vertexLayout;
+        this.key = createKey(vertexShader, fragmentShader, this.targetImageFormats, depthFormat, targetFinalLayout, settings, depthOnly, renderer);
+        this.renderPassKey = new PipelineRegistry.RenderPassKey(this.targetImageFormats, depthFormat, targetFinalLayout,
+                settings.depthPrepass, samples);
+        this.descriptorLayouts = List.copyOf(settings.descriptorLayouts);
+        this.pushConstantStages = settings.pushConstantStages;
+        this.pushConstantSize = settings.pushConstantSize;
+        this.depthTest = settings.depthTest;
+        this.depthWrite = settings.depthWrite;
+        this.depthPrepass = settings.depthPrepass;
+        this.depthOnly = depthOnly;
+        if (depthPrepass && depthTest == DepthTest.NONE)
+            renderer.getLogger().error("A depth pre-pass needs Settings.depthTest, the main pass then tests for EQUAL");
+        if (samples != settings.samples && !depthOnly)
+            renderer.getLogger().log(Logger.MessageType.WARNING,
+                    "Multisampling with " + settings.samples + " samples is not supported, using " + samples);
         renderer.addPipeline(this);
 
         create();
     }
 
+    // Returns an existing identical pipeline if there is one, each obtain() needs a matching destroy()
+    public static Pipeline obtain(Shader vertexShader, Shader fragmentShader, Window target, Settings settings, Fuel3D renderer) {
+        return obtain(vertexShader, fragmentShader, List.of(target.getImageFormat()), depthFormatOf(settings, renderer),
+                VK_IMAGE_LAYOUT_PRESENT_SRC_KHR, settings, renderer);
+    }
+
+    public static Pipeline obtain(Shader vertexShader, Shader fragmentShader, Image target, Settings settings, Fuel3D renderer) {
+        return obtain(vertexShader, fragmentShader, List.of(target.getImageFormat()), depthFormatOf(settings, renderer),
+                VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, settings, renderer);
+    }
+
+    public static Pipeline obtain(Shader vertexShader, Shader fragmentShader, RenderGraph.Pass pass, Settings settings, Fuel3D renderer) {
+        return obtain(vertexShader, fragmentShader, pass.getColorFormats(), depthFormatOf(pass, settings, renderer),
+                VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, settings, renderer);
+    }
+
+    private static Pipeline obtain(Shader vertexShader, Shader fragmentShader, List<Integer> targetImageFormats, int depthFormat,
+                                   int targetFinalLayout, Settings settings, Fuel3D renderer) {
+        PipelineKey key = createKey(vertexShader, fragmentShader, targetImageFormats, depthFormat, targetFinalLayout, settings, false, renderer);
+        return renderer.getPipelineRegistry().obtain(key, () -> new Pipeline(vertexShader, fragmentShader,
+                targetImageFormats, depthFormat, targetFinalLayout, settings, false, renderer));
+    }
+
+    private static PipelineKey createKey(Shader vertexShader, Shader fragmentShader, List<Integer> targetImageFormats, int depthFormat,
+                                         int targetFinalLayout, Settings settings, boolean depthOnly, Fuel3D renderer) {
+        return new PipelineKey(vertexShader, fragmentShader, List.copyOf(targetImageFormats), depthFormat, targetFinalLayout,
+                settings.vertexLayout == null ? null : settings.vertexLayout.stateKey(),
+                settings.descriptorLayouts.stream().map(DescriptorLayout::stateKey).toList(),
+                settings.pushConstantStages, settings.pushConstantSize,
+                settings.depthTest, settings.depthWrite, settings.depthPrepass, depthOnly, renderer.getSampleCount(settings.samples));
+    }
+
+    private static int depthFormatOf(Settings settings, Fuel3D renderer) { // Framebuffers of the pipeline create the depth image
+        return settings.depthTest == DepthTest.NONE ? VK_FORMAT_UNDEFINED : renderer.getDepthFormat();
+    }
+
+    private static int depthFormatOf(RenderGraph.Pass pass, Settings settings, Fuel3D renderer) { // The pass declares its depth attachment
+        if (settings.depthTest != DepthTest.NONE && pass.getDepthFormat() == VK_FORMAT_UNDEFINED)
+            renderer.getLogger().error("Depth testing needs a depth attachment in render graph pass \"" + pass.getName() + "\"");
+        if (settings.depthPrepass) // The graph creates single subpass render passes
+            renderer.getLogger().error("Use a separate render graph pass writing depth and DepthTest.EQUAL instead of Settings.depthPrepass");
+        if (settings.samples > 1) // Graph attachments are single sampled
+            renderer.getLogger().error("Multisampling is not supported in render graph pass \"" + pass.getName() + "\"");
+        return pass.getDepthFormat();
+    }
+
+    // Depth only pipeline for subpass 0 of a Settings.depthPrepass pipeline, it shares the vertex shader so depth values match
+    // exactly. Record with it, draw the opaque geometry, then CmdRecorder.nextSubpass(this pipeline) and draw it again
+    public Pipeline createDepthPrepass() {
+        if (!depthPrepass) renderer.getLogger().error("Pipeline was not created with Settings.depthPrepass");
+        Settings settings = new Settings();
+        settings.vertexLayout = vertexLayout;
+        settings.descriptorLayouts = descriptorLayouts;
+        settings.pushConstantStages = pushConstantStages;
+        settings.pushConstantSize = pushConstantSize;
+        settings.depthTest = depthTest;
+        settings.depthPrepass = true;
+        settings.samples = samples;
+        return new Pipeline(vertexShader, null, targetImageFormats, depthFormat, targetFinalLayout, settings, true, renderer);
+    }
+
     protected void create() {
         try (MemoryStack stack = MemoryStack.stackPush()) {
-            createRenderPass();
+            renderpass = renderer.getPipelineRegistry().acquireRenderPass(renderPassKey, this::createRenderPass);
 
             LongBuffer lb = stack.mallocLong(1);
 
-            VkPipelineShaderStageCreateInfo.Buffer shaderStageInfo = VkPipelineShaderStageCreateInfo.malloc(2, stack)
+            VkPipelineShaderStageCreateInfo.Buffer shaderStageInfo = VkPipelineShaderStageCreateInfo.malloc(fragmentShader == null ? 1 : 2, stack)
                     .sType$Default()
                     .pNext(NULL)
                     .flags(0)
@@ -40,7 +158,7 @@ public class Pipeline {
                     .module(vertexShader.getShader())
                     .pName(stack.ASCII("main"))
                     .pSpecializationInfo(null);
-            (shaderStageInfo.get(1))
+            if (fragmentShader != null) shaderStageInfo.get(1)
                     .sType$Default()
                     .pNext(NULL)
                     .flags(0)
@@ -53,7 +171,8 @@ public class Pipeline {
                     .pNext(NULL)
                     .flags(0)
                     .pVertexBindingDescriptions(null)
-                    .pVertexAttributeDescriptions(null); // TODO: Vertex array
+                    .pVertexAttributeDescriptions(null);
+            if (vertexLayout != null) vertexLayout.fill(vertexInputStateInfo, stack);
             VkPipelineInputAssemblyStateCreateInfo inputAssemblyStateInfo = VkPipelineInputAssemblyStateCreateInfo.malloc(stack)
                     .sType$Default()
                     .pNext(NULL)
@@ -86,14 +205,28 @@ public class Pipeline {
                     .sType$Default()
                     .pNext(NULL)
                     .flags(0)
-                    .rasterizationSamples(VK_SAMPLE_COUNT_1_BIT)
-                    .sampleShadingEnable(false) // TODO: Anti aliasing support via multisampling
+                    .rasterizationSamples(samples)
+                    .sampleShadingEnable(false) // Shades once per pixel, only coverage and depth are per sample
                     .minSampleShading(1.0f)
                     .pSampleMask(null)
                     .alphaToCoverageEnable(false)
                     .alphaToOneEnable(false);
-            // TODO: Depth testing
-            VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachmentState = VkPipelineColorBlendAttachmentState.malloc(1, stack)
+            // The pre-pass lays down depth, so the main pass only shades the visible fragment of every pixel
+            VkPipelineDepthStencilStateCreateInfo depthStencilStateInfo = depthFormat == VK_FORMAT_UNDEFINED ? null
+                    : VkPipelineDepthStencilStateCreateInfo.calloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .depthTestEnable(depthTest != DepthTest.NONE)
+                    .depthWriteEnable(depthTest != DepthTest.NONE && (depthOnly || (depthWrite && !depthPrepass)))
+                    .depthCompareOp(depthPrepass && !depthOnly ? VK_COMPARE_OP_EQUAL : depthTest.getCompareOp())
+                    .depthBoundsTestEnable(false)
+                    .stencilTestEnable(false)
+                    .minDepthBounds(0.0f)
+                    .maxDepthBounds(1.0f);
+            VkPipelineColorBlendAttachmentState.Buffer colorBlendAttachmentState = VkPipelineColorBlendAttachmentState.malloc(
+                    depthOnly ? 0 : targetImageFormats.size(), stack);
+            colorBlendAttachmentState.forEach(attachment -> attachment
                     .blendEnable(true) // TODO: Proper customizable color blending
                     .srcColorBlendFactor(VK_BLEND_FACTOR_SRC_ALPHA)
                     .dstColorBlendFactor(VK_BLEND_FACTOR_ONE_MINUS_SRC_ALPHA)
@@ -105,7 +238,7 @@ public class Pipeline {
                             VK_COLOR_COMPONENT_R_BIT |
                             VK_COLOR_COMPONENT_G_BIT |
                             VK_COLOR_COMPONENT_B_BIT |
-                            VK_COLOR_COMPONENT_A_BIT);
+                            VK_COLOR_COMPONENT_A_BIT));
             VkPipelineColorBlendStateCreateInfo colorBlendStateInfo = VkPipelineColorBlendStateCreateInfo.malloc(stack)
                     .sType$Default()
                     .pNext(NULL)
@@ -126,14 +259,8 @@ public class Pipeline {
                             VK_DYNAMIC_STATE_VIEWPORT,
                             VK_DYNAMIC_STATE_SCISSOR
                     ));
-            VkPipelineLayoutCreateInfo pipelineLayoutInfo = VkPipelineLayoutCreateInfo.malloc(stack)
-                    .sType$Default()
-                    .pNext(NULL)
-                    .flags(0)
-                    .pSetLayouts(null)
-                    .pPushConstantRanges(null);
-            renderer.chErr(vkCreatePipelineLayout(renderer.getDevice(), pipelineLayoutInfo, null, lb));
-            pipelineLayout = lb.get(0);
+            layoutKey = renderer.getPipelineRegistry().acquireLayoutKey(descriptorLayouts, pushConstantStages, pushConstantSize);
+            pipelineLayout = renderer.getPipelineRegistry().acquireLayout(layoutKey, () -> layoutKey.createPipelineLayout(renderer));
 
             VkGraphicsPipelineCreateInfo.Buffer graphicsPipelineInfo = VkGraphicsPipelineCreateInfo.malloc(1, stack)
                     .sType$Default()
@@ -146,49 +273,132 @@ public class Pipeline {
                     .pViewportState(viewportStateInfo)
                     .pRasterizationState(rasterizationStateInfo)
                     .pMultisampleState(multisampleStateInfo)
-                    .pDepthStencilState(null)
+                    .pDepthStencilState(depthStencilStateInfo)
                     .pColorBlendState(colorBlendStateInfo)
                     .pDynamicState(dynamicStateInfo)
                     .layout(pipelineLayout)
                     .renderPass(renderpass)
-                    .subpass(0)
+                    .subpass(getSubpass())
                     .basePipelineHandle(VK_NULL_HANDLE)
                     .basePipelineIndex(-1); // TODO: make renderer create main pipeline and derive (?)
-            renderer.chErr(vkCreateGraphicsPipelines(renderer.getDevice(), VK_NULL_HANDLE, graphicsPipelineInfo, null, lb));
+            long start = System.nanoTime();
+            renderer.chErr(vkCreateGraphicsPipelines(renderer.getDevice(), renderer.getPipelineCache().getPipelineCache(), graphicsPipelineInfo, null, lb));
             graphicsPipeline = lb.get(0);
+            renderer.getLogger().log(Logger.MessageType.VERBOSE,
+                    String.format("Graphics pipeline created in %.2f ms", (System.nanoTime() - start) / 1e6));
         }
     }
 
-    private void createRenderPass() {
+
+    private long createRenderPass() {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             LongBuffer lb = stack.mallocLong(1);
 
-            VkAttachmentDescription.Buffer attachmentDescription = VkAttachmentDescription.malloc(1, stack)
-                    .flags(0) // TODO: Configurable number of framebuffer attachments (render targets)
-                    .format(targetImageFormat)
-                    .samples(VK_SAMPLE_COUNT_1_BIT) //TODO: Multisample
-                    .loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR)
-                    .storeOp(VK_ATTACHMENT_STORE_OP_STORE)
-                    .stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE)
-                    .stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
-                    .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED)
-                    .finalLayout(VK_IMAGE_LAYOUT_PRESENT_SRC_KHR); // TODO: Configurable render destination (swapchain optimized for now)
-            VkAttachmentReference.Buffer colorAttachmentReference = VkAttachmentReference.malloc(1, stack)
-                    .attachment(0)
-                    .layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
-            VkSubpassDescription.Buffer subpassDescription = VkSubpassDescription.calloc(1, stack)
-                    .flags(0) // TODO: Configurable number of subpasses (ex for deferred shading)
+            int colorCount = targetImageFormats.size();
+            boolean depth = depthFormat != VK_FORMAT_UNDEFINED;
+            boolean multisampled = samples != VK_SAMPLE_COUNT_1_BIT;
+            int resolveStart = colorCount + (depth ? 1 : 0); // Multisampled colors, depth, then the targets they resolve to
+            VkAttachmentDescription.Buffer attachmentDescription = VkAttachmentDescription.malloc(
+                    resolveStart + (multisampled ? colorCount : 0), stack);
+            VkAttachmentReference.Buffer colorAttachmentReference = VkAttachmentReference.malloc(colorCount, stack);
+            VkAttachmentReference.Buffer resolveAttachmentReference = multisampled ? VkAttachmentReference.malloc(colorCount, stack) : null;
+            for (int i = 0; i < colorCount; i++) {
+                attachmentDescription.get(i)
+                        .flags(0)
+                        .format(targetImageFormats.get(i))
+                        .samples(samples)
+                        .loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR)
+                        // Multisampled samples are discarded after the resolve, so they never leave tile memory
+                        .storeOp(multisampled ? VK_ATTACHMENT_STORE_OP_DONT_CARE : VK_ATTACHMENT_STORE_OP_STORE)
+                        .stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE)
+                        .stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
+                        .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                        // Present for windows, transfer source for offscreen images
+                        .finalLayout(multisampled ? VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL : targetFinalLayout);
+                colorAttachmentReference.get(i)
+                        .attachment(i)
+                        .layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+                if (!multisampled) continue;
+                attachmentDescription.get(resolveStart + i) // Written by the resolve at the end of the color subpass
+                        .flags(0)
+                        .format(targetImageFormats.get(i))
+                        .samples(VK_SAMPLE_COUNT_1_BIT)
+                        .loadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE)
+                        .storeOp(VK_ATTACHMENT_STORE_OP_STORE)
+                        .stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE)
+                        .stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
+                        .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                        .finalLayout(targetFinalLayout);
+                resolveAttachmentReference.get(i)
+                        .attachment(resolveStart + i)
+                        .layout(VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL);
+            }
+            VkAttachmentReference depthAttachmentReference = null;
+            if (depth) { // Only needed while rendering, never stored
+                attachmentDescription.get(colorCount)
+                        .flags(0)
+                        .format(depthFormat)
+                        .samples(samples)
+                        .loadOp(VK_ATTACHMENT_LOAD_OP_CLEAR)
+                        .storeOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
+                        .stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE)
+                        .stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
+                        .initialLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                        .finalLayout(VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+                depthAttachmentReference = VkAttachmentReference.malloc(stack)
+                        .attachment(colorCount)
+                        .layout(VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL);
+            }
+
+            // With a depth pre-pass, subpass 0 only writes depth and subpass 1 shades with an EQUAL depth test
+            int colorSubpass = depthPrepass ? 1 : 0;
+            VkSubpassDescription.Buffer subpassDescription = VkSubpassDescription.calloc(colorSubpass + 1, stack);
+            if (depthPrepass) subpassDescription.get(0)
+                    .flags(0)
+                    .pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS)
+                    .colorAttachmentCount(0)
+                    .pDepthStencilAttachment(depthAttachmentReference);
+            subpassDescription.get(colorSubpass)
+                    .flags(0)
                     .pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS)
-                    .colorAttachmentCount(1)
-                    .pColorAttachments(colorAttachmentReference);
-            VkSubpassDependency.Buffer subpassDependency = VkSubpassDependency.malloc(1, stack)
+                    .colorAttachmentCount(colorCount)
+                    .pColorAttachments(colorAttachmentReference)
+                    .pResolveAttachments(resolveAttachmentReference)
+                    .pDepthStencilAttachment(depthAttachmentReference);
+
+            // The depth image is cleared every time, after the depth writes of the previous use of the framebuffer
+            int depthStages = VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT | VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT;
+            int depthAccess = VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT | VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT;
+            boolean colorSubpassDepth = depth && !depthPrepass;
+            // Multisampled color images are also reused by every frame, the clear has to wait for the previous resolve
+            int colorAccess = multisampled ? VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT : 0;
+            VkSubpassDependency.Buffer subpassDependency = VkSubpassDependency.malloc(depthPrepass ? 3 : 1, stack);
+            subpassDependency.get(0)
                     .srcSubpass(VK_SUBPASS_EXTERNAL)
-                    .dstSubpass(0)
-                    .srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT)
-                    .dstStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT)
-                    .srcAccessMask(0)
-                    .dstAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT)
+                    .dstSubpass(colorSubpass)
+                    .srcStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | (colorSubpassDepth ? depthStages : 0))
+                    .dstStageMask(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT | (colorSubpassDepth ? depthStages : 0))
+                    .srcAccessMask(colorAccess | (colorSubpassDepth ? VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT : 0))
+                    .dstAccessMask(VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT | (colorSubpassDepth ? depthAccess : 0))
                     .dependencyFlags(0);
+            if (depthPrepass) {
+                subpassDependency.get(1)
+                        .srcSubpass(VK_SUBPASS_EXTERNAL)
+                        .dstSubpass(0)
+                        .srcStageMask(depthStages)
+                        .dstStageMask(depthStages)
+                        .srcAccessMask(VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT)
+                        .dstAccessMask(depthAccess)
+                        .dependencyFlags(0);
+                subpassDependency.get(2) // Depth written in the pre-pass is tested against in the same pixel
+                        .srcSubpass(0)
+                        .dstSubpass(1)
+                        .srcStageMask(depthStages)
+                        .dstStageMask(depthStages)
+                        .srcAccessMask(VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT)
+                        .dstAccessMask(VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT)
+                        .dependencyFlags(VK_DEPENDENCY_BY_REGION_BIT);
+            }
             VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.malloc(stack)
                     .sType$Default()
                     .pNext(NULL)
@@ -197,30 +407,55 @@ public class Pipeline {
                     .pSubpasses(subpassDescription)
                     .pDependencies(subpassDependency);
             renderer.chErr(vkCreateRenderPass(renderer.getDevice(), renderPassInfo, null, lb));
-            renderpass = lb.get(0);
+            return lb.get(0);
         }
     }
 
     public boolean isFramebufferCompatible(Framebuffer framebuffer) {
-        return framebuffer.getImage().getImageFormat() == targetImageFormat;
-        // TODO: (with multisampling) check sample count compatibility, support multiple attachments, subpasses, ...
+        List<Image> images = framebuffer.getImages();
+        if (images.size() != targetImageFormats.size()) return false;
+        for (int i = 0; i < images.size(); i++) {
+            if (images.get(i).getImageFormat() != targetImageFormats.get(i)) return false;
+        }
+        Image depthImage = framebuffer.getDepthImage();
+        if ((depthImage == null ? VK_FORMAT_UNDEFINED : depthImage.getImageFormat()) != depthFormat) return false;
+        return framebuffer.getSamples() == samples;
     }
 
     public float[] getClearColor() {
         return clearColor;
     }
 
+    protected float[][] getClearValues() { // One per attachment, the depth clear value is the far plane for the depth test
+        int colorCount = targetImageFormats.size();
+        float[][] clearValues = new float[colorCount + (depthFormat == VK_FORMAT_UNDEFINED ? 0 : 1)][];
+        for (int i = 0; i < colorCount; i++) {
+            clearValues[i] = clearColor;
+        }
+        if (clearValues.length > colorCount) clearValues[colorCount] = new float[] {depthTest.getClearDepth()};
+        return clearValues;
+    }
+
     protected void destroyObjects() {
         vkDestroyPipeline(renderer.getDevice(), graphicsPipeline, null);
-        vkDestroyPipelineLayout(renderer.getDevice(), pipelineLayout, null);
-        vkDestroyRenderPass(renderer.getDevice(), renderpass, null);
+        renderer.getPipelineRegistry().releaseLayout(layoutKey,
+                layout -> vkDestroyPipelineLayout(renderer.getDevice(), layout, null));
+        renderer.getPipelineRegistry().releaseLayoutKey(layoutKey);
+        renderer.getPipelineRegistry().releaseRenderPass(renderPassKey,
+                renderPass -> vkDestroyRenderPass(renderer.getDevice(), renderPass, null));
     }
 
     public void destroy() {
+        PipelineRegistry registry = renderer.getPipelineRegistry();
+        if (registry.isShared(this) && !registry.release(key)) return; // Still used by someone else
         destroyObjects();
         renderer.removePipeline(this);
     }
 
+    protected PipelineKey getKey() {
+        return key;
+    }
+
     protected long getRenderpass() {
         return renderpass;
     }
@@ -229,4 +464,60 @@ public class Pipeline {
         return graphicsPipeline;
     }
 
+    protected long getPipelineLayout() {
+        return pipelineLayout;
+    }
+
+    protected int getPushConstantStages() {
+        return pushConstantStages;
+    }
+
+    protected int getDepthFormat() {
+        return depthFormat;
+    }
+
+    public int getSamples() { // Settings.samples after clamping to what the device supports
+        return samples;
+    }
+
+    protected int getSubpass() {
+        return depthPrepass && !depthOnly ? 1 : 0;
+    }
+
+    public static class Settings {
+        public VertexLayout vertexLayout = null; // null if vertex positions are generated in the vertex shader
+        public List<DescriptorLayout> descriptorLayouts = List.of(); // Set 0, 1, ... in order
+        public int pushConstantSize = 0; // Bytes written with CmdRecorder.pushConstants, 128 are always available
+        public int pushConstantStages = DescriptorLayout.ALL_GRAPHICS; // Stages that read them
+        public DepthTest depthTest = DepthTest.NONE; // Anything else gives the pipeline's framebuffers a depth attachment
+        public boolean depthWrite = true;
+        public boolean depthPrepass = false; // Opaque geometry only, see createDepthPrepass
+        public int samples = 1; // MSAA, lowered to the highest count the device supports. The targets receive the resolve
+    }
+
+    public enum DepthTest { // Reverse z projections use GREATER, the depth attachment is then cleared to 0
+        NONE(VK_COMPARE_OP_ALWAYS, 1.0f),
+        LESS(VK_COMPARE_OP_LESS, 1.0f),
+        LESS_OR_EQUAL(VK_COMPARE_OP_LESS_OR_EQUAL, 1.0f),
+        EQUAL(VK_COMPARE_OP_EQUAL, 1.0f), // Against depth a previous pass wrote
+        GREATER(VK_COMPARE_OP_GREATER, 0.0f),
+        GREATER_OR_EQUAL(VK_COMPARE_OP_GREATER_OR_EQUAL, 0.0f);
+
+        private final int compareOp;
+        private final float clearDepth;
+
+        DepthTest(int compareOp, float clearDepth) {
+            this.compareOp = compareOp;
+            this.clearDepth = clearDepth;
+        }
+
+        private int getCompareOp() {
+            return compareOp;
+        }
+
+        protected float getClearDepth() {
+            return clearDepth;
+        }
+    }
+
 }
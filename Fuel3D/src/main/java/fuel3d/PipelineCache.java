@@ -0,0 +1,171 @@
+package fuel3d;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+import org.lwjgl.vulkan.VkPipelineCacheCreateInfo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineCache { // VkPipelineCache shared by all pipelines, persisted to disk between runs
+    private final Fuel3D renderer;
+    private final Path path; // null if not persisted
+    private long pipelineCache;
+    private long loadedSize = 0, savedSize = 0;
+    private long loadTime = 0, saveTime = 0; // Nanoseconds
+
+    private static final int HEADER_SIZE = 16 + VK_UUID_SIZE; // VkPipelineCacheHeaderVersionOne
+
+    protected PipelineCache(Path path, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.path = path;
+
+        create();
+    }
+
+    protected void create() {
+        long start = System.nanoTime();
+        ByteBuffer initialData = path == null ? null : readCacheFile();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkPipelineCacheCreateInfo pipelineCacheInfo = VkPipelineCacheCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .pInitialData(initialData);
+            renderer.chErr(vkCreatePipelineCache(renderer.getDevice(), pipelineCacheInfo, null, lb));
+            pipelineCache = lb.get(0);
+        }
+        finally {
+            if (initialData != null) memFree(initialData);
+        }
+
+        loadTime = System.nanoTime() - start;
+        if (loadedSize > 0) {
+            renderer.getLogger().log(Logger.MessageType.INFO, String.format("Pipeline cache loaded: %d bytes in %.2f ms",
+                    loadedSize, loadTime / 1e6));
+        }
+    }
+
+    private ByteBuffer readCacheFile() { // null if missing or not usable with this device
+        if (!Files.isRegularFile(path)) return null;
+
+        ByteBuffer data = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = memAlloc((int) channel.size());
+            while (data.hasRemaining()) {
+                if (channel.read(data) < 0) break;
+            }
+            data.flip();
+        }
+        catch (IOException e) {
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Cannot read pipeline cache " + path + ": " + e.getMessage());
+            if (data != null) memFree(data);
+            return null;
+        }
+
+        if (!isCompatible(data)) {
+            renderer.getLogger().log(Logger.MessageType.INFO, "Pipeline cache was created by a different device or driver, ignoring it");
+            memFree(data);
+            return null;
+        }
+        loadedSize = data.remaining();
+        return data;
+    }
+
+    private boolean isCompatible(ByteBuffer data) {
+        if (data.remaining() < HEADER_SIZE) return false;
+        ByteBuffer header = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(renderer.getPhysicalDevice(), properties);
+
+            if (header.getInt(0) < HEADER_SIZE
+                    || header.getInt(4) != VK_PIPELINE_CACHE_HEADER_VERSION_ONE
+                    || header.getInt(8) != properties.vendorID()
+                    || header.getInt(12) != properties.deviceID()) {
+                return false;
+            }
+            for (int i = 0; i < VK_UUID_SIZE; i++) {
+                if (header.get(16 + i) != properties.pipelineCacheUUID(i)) return false;
+            }
+            return true;
+        }
+    }
+
+    protected void save() {
+        if (path == null) return;
+        long start = System.nanoTime();
+
+        ByteBuffer data = null;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer size = stack.mallocPointer(1);
+            renderer.chErr(vkGetPipelineCacheData(renderer.getDevice(), pipelineCache, size, null));
+            data = memAlloc((int) size.get(0));
+            renderer.chErr(vkGetPipelineCacheData(renderer.getDevice(), pipelineCache, size, data));
+            data.limit((int) size.get(0));
+
+            Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            try { // Never leave a half written cache behind
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            savedSize = size.get(0);
+            saveTime = System.nanoTime() - start;
+            renderer.getLogger().log(Logger.MessageType.INFO, String.format("Pipeline cache saved: %d bytes in %.2f ms",
+                    savedSize, saveTime / 1e6));
+        }
+        catch (IOException e) {
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Cannot write pipeline cache " + path + ": " + e.getMessage());
+        }
+        finally {
+            if (data != null) memFree(data);
+        }
+    }
+
+    protected void destroy() {
+        save();
+        vkDestroyPipelineCache(renderer.getDevice(), pipelineCache, null);
+    }
+
+    protected long getPipelineCache() {
+        return pipelineCache;
+    }
+
+    public long getLoadedSize() {
+        return loadedSize;
+    }
+
+    public long getSavedSize() {
+        return savedSize;
+    }
+
+    public long getLoadTimeNanos() {
+        return loadTime;
+    }
+
+    public long getSaveTimeNanos() {
+        return saveTime;
+    }
+}
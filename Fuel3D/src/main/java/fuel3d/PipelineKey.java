@@ -0,0 +1,9 @@
+package fuel3d;
+
+import java.util.List;
+
+// Everything that affects the created VkPipeline, identical keys get the same Pipeline from PipelineRegistry
+record PipelineKey(Shader vertexShader, Shader fragmentShader, List<Integer> targetImageFormats, int depthFormat, int targetFinalLayout,
+                   Object vertexLayout, List<Object> descriptorLayouts, int pushConstantStages, int pushConstantSize,
+                   Pipeline.DepthTest depthTest, boolean depthWrite, boolean depthPrepass, boolean depthOnly,
+                   int samples) { }
@@ -0,0 +1,190 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkPipelineLayoutCreateInfo;
+import org.lwjgl.vulkan.VkPushConstantRange;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class PipelineRegistry { // Deduplicates pipelines, and shares render passes, pipeline and descriptor set layouts between them
+    private final Fuel3D renderer;
+    private final Map<PipelineKey, SharedPipeline> pipelines = new HashMap<>();
+    private final RefCountedCache<RenderPassKey> renderPasses = new RefCountedCache<>();
+    private final RefCountedCache<LayoutKey> layouts = new RefCountedCache<>();
+    private final RefCountedCache<Object> setLayouts = new RefCountedCache<>(); // Keyed by DescriptorLayout.stateKey()
+    private int pipelineRequests = 0;
+
+    protected PipelineRegistry(Fuel3D renderer) {
+        this.renderer = renderer;
+    }
+
+    protected synchronized Pipeline obtain(PipelineKey key, Supplier<Pipeline> create) {
+        pipelineRequests++;
+        SharedPipeline shared = pipelines.get(key);
+        if (shared == null) {
+            shared = new SharedPipeline(create.get());
+            pipelines.put(key, shared);
+        }
+        else {
+            shared.references++;
+        }
+        return shared.pipeline;
+    }
+
+    protected synchronized boolean release(PipelineKey key) { // true if the pipeline is no longer referenced
+        SharedPipeline shared = pipelines.get(key);
+        if (shared == null) return true;
+        if (--shared.references > 0) return false;
+        pipelines.remove(key);
+        return true;
+    }
+
+    protected synchronized boolean isShared(Pipeline pipeline) {
+        SharedPipeline shared = pipelines.get(pipeline.getKey());
+        return shared != null && shared.pipeline == pipeline;
+    }
+
+    protected synchronized long acquireRenderPass(RenderPassKey key, LongSupplier create) {
+        return renderPasses.acquire(key, create);
+    }
+
+    protected synchronized void releaseRenderPass(RenderPassKey key, LongConsumer destroy) {
+        renderPasses.release(key, destroy);
+    }
+
+    protected synchronized long acquireLayout(LayoutKey key, LongSupplier create) {
+        return layouts.acquire(key, create);
+    }
+
+    protected synchronized void releaseLayout(LayoutKey key, LongConsumer destroy) {
+        layouts.release(key, destroy);
+    }
+
+    protected synchronized long acquireSetLayout(DescriptorLayout descriptorLayout) {
+        return setLayouts.acquire(descriptorLayout.stateKey(), () -> descriptorLayout.createSetLayout(renderer));
+    }
+
+    protected synchronized void releaseSetLayout(Object descriptorLayoutKey) {
+        setLayouts.release(descriptorLayoutKey, setLayout -> vkDestroyDescriptorSetLayout(renderer.getDevice(), setLayout, null));
+    }
+
+    // Acquires the set layouts it refers to
+    protected LayoutKey acquireLayoutKey(List<DescriptorLayout> descriptorLayouts, int pushConstantStages, int pushConstantSize) {
+        List<Long> handles = new ArrayList<>(descriptorLayouts.size());
+        for (DescriptorLayout descriptorLayout : descriptorLayouts) {
+            handles.add(acquireSetLayout(descriptorLayout));
+        }
+        return new LayoutKey(List.copyOf(handles), descriptorLayouts.stream().map(DescriptorLayout::stateKey).toList(),
+                pushConstantSize == 0 ? 0 : pushConstantStages, pushConstantSize);
+    }
+
+    protected void releaseLayoutKey(LayoutKey key) {
+        for (Object descriptorLayoutKey : key.descriptorLayouts()) {
+            releaseSetLayout(descriptorLayoutKey);
+        }
+    }
+
+    protected synchronized void destroy() {
+        renderer.getLogger().log(Logger.MessageType.INFO, "Pipeline registry: " + pipelineRequests + " requests, "
+                + pipelines.size() + " shared pipelines, " + renderPasses.size() + " render passes, " + layouts.size() + " layouts, "
+                + setLayouts.size() + " descriptor set layouts alive");
+        pipelines.clear();
+    }
+
+    public synchronized int getSharedPipelineCount() {
+        return pipelines.size();
+    }
+
+    public synchronized int getRenderPassCount() {
+        return renderPasses.size();
+    }
+
+    public synchronized int getLayoutCount() {
+        return layouts.size();
+    }
+
+    public synchronized int getSetLayoutCount() {
+        return setLayouts.size();
+    }
+
+    protected record RenderPassKey(List<Integer> colorFormats, int depthFormat, int finalLayout, boolean depthPrepass, int samples) { }
+
+    protected record LayoutKey(List<Long> setLayouts, List<Object> descriptorLayouts, // Set layout keys, for release
+                               int pushConstantStages, int pushConstantSize) {
+        protected long createPipelineLayout(Fuel3D renderer) {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                LongBuffer lb = stack.mallocLong(1);
+
+                VkPushConstantRange.Buffer pushConstantRange = pushConstantSize == 0 ? null : VkPushConstantRange.malloc(1, stack)
+                        .stageFlags(pushConstantStages)
+                        .offset(0)
+                        .size(pushConstantSize);
+                VkPipelineLayoutCreateInfo pipelineLayoutInfo = VkPipelineLayoutCreateInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(NULL)
+                        .flags(0)
+                        .pSetLayouts(stack.longs(setLayouts.stream().mapToLong(Long::longValue).toArray()))
+                        .pPushConstantRanges(pushConstantRange);
+                renderer.chErr(vkCreatePipelineLayout(renderer.getDevice(), pipelineLayoutInfo, null, lb));
+                return lb.get(0);
+            }
+        }
+    }
+
+    private static class SharedPipeline {
+        private final Pipeline pipeline;
+        private int references = 1;
+
+        private SharedPipeline(Pipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+    }
+
+    private static class RefCountedCache<K> {
+        private final Map<K, Entry> entries = new HashMap<>();
+
+        private long acquire(K key, LongSupplier create) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                entry = new Entry(create.getAsLong());
+                entries.put(key, entry);
+            }
+            else {
+                entry.references++;
+            }
+            return entry.handle;
+        }
+
+        private void release(K key, LongConsumer destroy) {
+            Entry entry = entries.get(key);
+            if (entry == null) return;
+            if (--entry.references == 0) {
+                entries.remove(key);
+                destroy.accept(entry.handle);
+            }
+        }
+
+        private int size() {
+            return entries.size();
+        }
+
+        private static class Entry {
+            private final long handle;
+            private int references = 1;
+
+            private Entry(long handle) {
+                this.handle = handle;
+            }
+        }
+    }
+}
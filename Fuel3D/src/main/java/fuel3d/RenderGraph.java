@@ -0,0 +1,767 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.LongBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.KHRSwapchain.VK_IMAGE_LAYOUT_PRESENT_SRC_KHR;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Passes declare what they read and write, compile() culls passes nothing depends on, aliases the memory of transient
+// images whose lifetimes do not overlap and creates render passes, execute() records every pass with batched barriers
+public class RenderGraph { // Built once and executed every frame, rebuild it when the window size changes
+    private final Fuel3D renderer;
+    private final List<Resource> resources = new ArrayList<>();
+    private final List<Pass> passes = new ArrayList<>();
+    private final List<Pass> executedPasses = new ArrayList<>(); // Declaration order, without culled passes
+    private final List<Use> finalUses = new ArrayList<>(); // Transitions of imported images to their final layout
+    private final List<Slot> slots = new ArrayList<>();
+    private boolean compiled = false;
+    private long transientBytes, allocatedBytes;
+    private int barrierBatchCount, barrierCount; // Of the last execute
+
+    public RenderGraph(Fuel3D renderer) {
+        this.renderer = renderer;
+        renderer.addRenderGraph(this);
+    }
+
+    public Resource createImage(String name, int width, int height, int imageFormat) { // Transient, only lives within the graph
+        checkNotCompiled();
+        return addResource(new Resource(name, ResourceType.TRANSIENT, width, height, imageFormat));
+    }
+
+    // initialLayout is the image's layout whenever the graph starts executing, UNDEFINED if its contents can be discarded
+    public Resource importImage(String name, Image image, int initialLayout, int finalLayout) {
+        checkNotCompiled();
+        if (finalLayout == VK_IMAGE_LAYOUT_UNDEFINED) renderer.getLogger().error("Images cannot be transitioned to UNDEFINED");
+        Resource resource = new Resource(name, ResourceType.IMAGE, image.getWidth(), image.getHeight(), image.getImageFormat());
+        resource.image = image;
+        resource.initialLayout = initialLayout;
+        resource.finalLayout = finalLayout;
+        return addResource(resource);
+    }
+
+    // The next swapchain image every execute, presented at the end of the frame. Only usable as a color attachment
+    public Resource importWindow(String name, WindowFramebuffer windowFramebuffer) {
+        checkNotCompiled();
+        Window window = windowFramebuffer.getWindow();
+        Resource resource = new Resource(name, ResourceType.WINDOW, window.getWidth(), window.getHeight(), window.getImageFormat());
+        resource.windowFramebuffer = windowFramebuffer;
+        resource.initialLayout = VK_IMAGE_LAYOUT_UNDEFINED;
+        resource.finalLayout = VK_IMAGE_LAYOUT_PRESENT_SRC_KHR;
+        return addResource(resource);
+    }
+
+    // Writes before the graph executes must already be visible, which StagingRing and Fuel3D.acquireBuffer take care of
+    public Resource importBuffer(String name, Buffer buffer) {
+        checkNotCompiled();
+        Resource resource = new Resource(name, ResourceType.BUFFER, 0, 0, VK_FORMAT_UNDEFINED);
+        resource.buffer = buffer;
+        return addResource(resource);
+    }
+
+    public Pass addPass(String name) { // Graphics pass, declare its color attachments with Pass.color
+        checkNotCompiled();
+        Pass pass = new Pass(name, true);
+        passes.add(pass);
+        return pass;
+    }
+
+    public Pass addComputePass(String name) { // Recorded outside of render passes, also for transfers
+        checkNotCompiled();
+        Pass pass = new Pass(name, false);
+        passes.add(pass);
+        return pass;
+    }
+
+    private Resource addResource(Resource resource) {
+        resources.add(resource);
+        return resource;
+    }
+
+    private void checkNotCompiled() {
+        if (compiled) renderer.getLogger().error("Render graph is already compiled, create a new one to change it");
+    }
+
+    public void compile() {
+        checkNotCompiled();
+        cull();
+        computeLifetimes();
+        allocateTransients();
+        for (Pass pass : executedPasses) {
+            if (pass.graphics) pass.createRenderPass();
+        }
+        for (Resource resource : resources) {
+            if (resource.firstUse < 0 || !resource.isImported() || resource.type == ResourceType.BUFFER) continue;
+            finalUses.add(resource.type == ResourceType.WINDOW
+                    ? new Use(resource, VK_PIPELINE_STAGE_BOTTOM_OF_PIPE_BIT, 0, 0, VK_IMAGE_LAYOUT_PRESENT_SRC_KHR)
+                    : new Use(resource, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT, VK_ACCESS_MEMORY_READ_BIT, 0, resource.finalLayout));
+        }
+        compiled = true;
+
+        renderer.getLogger().log(Logger.MessageType.VERBOSE, String.format(
+                "Render graph compiled: %d of %d passes, %d transient images in %d allocations (%d of %d KiB)",
+                executedPasses.size(), passes.size(), resources.stream().filter(Resource::isTransient).count(),
+                slots.size(), allocatedBytes / 1024, transientBytes / 1024));
+    }
+
+    private void cull() { // Walks back from passes with visible results, keeping the passes whose writes they read
+        Set<Resource> needed = new HashSet<>();
+        List<Pass> kept = new ArrayList<>();
+        for (int i = passes.size() - 1; i >= 0; i--) {
+            Pass pass = passes.get(i);
+            boolean keep = pass.sideEffects;
+            for (Use use : pass.uses) {
+                if (use.isWrite() && (use.resource.isImported() || needed.contains(use.resource))) keep = true;
+            }
+            if (!keep) continue;
+
+            kept.add(pass);
+            for (Use use : pass.uses) {
+                if (use.clearValue != null) needed.remove(use.resource); // Fully overwritten, earlier writes do not matter
+            }
+            for (Use use : pass.uses) {
+                if (use.readAccess != 0) needed.add(use.resource); // Includes color attachments that are loaded
+            }
+        }
+        Collections.reverse(kept);
+        executedPasses.addAll(kept);
+    }
+
+    private void computeLifetimes() {
+        for (int i = 0; i < executedPasses.size(); i++) {
+            Pass pass = executedPasses.get(i);
+            int windowCount = 0;
+            for (Use use : pass.uses) {
+                Resource resource = use.resource;
+                if (resource.firstUse < 0) resource.firstUse = i;
+                resource.lastUse = i;
+                resource.usage |= use.imageUsage;
+                if (resource.type == ResourceType.WINDOW) windowCount++;
+            }
+            if (windowCount > 1) renderer.getLogger().error("Render graph pass \"" + pass.name + "\" renders to more than one window");
+        }
+
+        for (int i = 0; i < executedPasses.size(); i++) { // Load what earlier passes or the frame before left, store what is used later
+            Pass pass = executedPasses.get(i);
+            for (Use use : pass.uses) {
+                if (use.clearValue != null || !use.isAttachment()) continue;
+                Resource resource = use.resource;
+                boolean hasContents = resource.firstUse < i
+                        || (resource.type == ResourceType.IMAGE && resource.initialLayout != VK_IMAGE_LAYOUT_UNDEFINED);
+                use.loadOp = hasContents ? VK_ATTACHMENT_LOAD_OP_LOAD : VK_ATTACHMENT_LOAD_OP_DONT_CARE;
+                if (!hasContents) use.readAccess = 0;
+            }
+            for (Use use : pass.uses) {
+                if (use.isAttachment()) use.storeOp = use.resource.isImported() || use.resource.lastUse > i
+                        ? VK_ATTACHMENT_STORE_OP_STORE : VK_ATTACHMENT_STORE_OP_DONT_CARE;
+            }
+        }
+    }
+
+    // Largest images first, each goes into the first slot whose occupants are done before it starts or start after it ends
+    private void allocateTransients() {
+        List<Resource> transients = new ArrayList<>();
+        for (Resource resource : resources) {
+            if (!resource.isTransient() || resource.firstUse < 0) continue;
+            resource.image = Image.createAliased(resource.width, resource.height, resource.format, resource.usage, renderer);
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                VkMemoryRequirements requirements = VkMemoryRequirements.malloc(stack);
+                vkGetImageMemoryRequirements(renderer.getDevice(), resource.image.getImage(), requirements);
+                resource.size = requirements.size();
+                resource.alignment = requirements.alignment();
+                resource.memoryTypeBits = requirements.memoryTypeBits();
+            }
+            transientBytes += resource.size;
+            transients.add(resource);
+        }
+        transients.sort(Comparator.comparingLong((Resource resource) -> resource.size).reversed());
+
+        for (Resource resource : transients) {
+            Slot slot = null;
+            for (Slot candidate : slots) {
+                if (candidate.fits(resource)) {
+                    slot = candidate;
+                    break;
+                }
+            }
+            if (slot == null) {
+                slot = new Slot();
+                slots.add(slot);
+            }
+            slot.add(resource);
+        }
+
+        for (Slot slot : slots) {
+            slot.allocation = renderer.getMemoryAllocator().allocateAliased(slot.size, slot.alignment, slot.memoryTypeBits);
+            allocatedBytes += slot.size;
+            for (Resource resource : slot.occupants) {
+                resource.image.bindMemory(slot.allocation.getMemory(), slot.allocation.getOffset());
+            }
+        }
+    }
+
+    // A window the graph renders to was resized since it was built. Destroy it and build a new one before executing
+    public boolean isOutdated() {
+        for (Resource resource : resources) {
+            if (resource.type != ResourceType.WINDOW) continue;
+            Window window = resource.windowFramebuffer.getWindow();
+            if (window.getWidth() != resource.width || window.getHeight() != resource.height) return true;
+        }
+        return false;
+    }
+
+    public void execute() { // Records into the frame being recorded, between Fuel3D.nextFrame and endFrame
+        if (!compiled) compile();
+        VkCommandBuffer commandBuffer = renderer.recordGraph();
+        CmdRecorder recorder = renderer.getCmdRecorder();
+        barrierBatchCount = 0;
+        barrierCount = 0;
+
+        for (Resource resource : resources) {
+            if (resource.firstUse >= 0) resource.beginFrame();
+        }
+        for (Pass pass : executedPasses) {
+            recordBarriers(commandBuffer, pass.uses);
+            if (pass.graphics) recorder.startGraphPass(commandBuffer, pass.getFramebuffer(), pass.renderPass, pass.clearValues);
+            else recorder.startCommands(commandBuffer);
+            recorder.beginProfile(pass.name);
+            if (pass.commands != null) pass.commands.accept(recorder);
+            recorder.endProfile();
+            recorder.close();
+        }
+        recordBarriers(commandBuffer, finalUses);
+    }
+
+    // Every barrier a pass needs goes into one vkCmdPipelineBarrier, so the GPU waits once per pass at most
+    private void recordBarriers(VkCommandBuffer commandBuffer, List<Use> uses) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageMemoryBarrier.Buffer imageBarriers = VkImageMemoryBarrier.malloc(uses.size(), stack);
+            VkBufferMemoryBarrier.Buffer bufferBarriers = VkBufferMemoryBarrier.malloc(uses.size(), stack);
+            int srcStageMask = 0, dstStageMask = 0;
+
+            for (Use use : uses) {
+                Resource resource = use.resource;
+                if (resource.slot != null && !resource.handedOver) { // Takes over from the previous occupant of its memory
+                    resource.readStages = resource.slot.stages;
+                    resource.writeAccess = resource.slot.access;
+                    resource.handedOver = true;
+                }
+                boolean layoutChange = resource.type != ResourceType.BUFFER && resource.layout != use.layout;
+                int srcStages, srcAccess, dstAccess = use.readAccess | use.writeAccess;
+
+                if (layoutChange || use.isWrite()) { // Waits for earlier reads and writes alike
+                    srcStages = resource.writeStages | resource.readStages;
+                    srcAccess = resource.writeAccess;
+                }
+                else if (resource.writeStages != 0 && ((use.stages & ~resource.readStages) != 0 || (use.readAccess & ~resource.readAccess) != 0)) {
+                    srcStages = resource.writeStages; // Read after write the reading stages have not seen yet
+                    srcAccess = resource.writeAccess;
+                }
+                else {
+                    srcStages = 0;
+                    srcAccess = 0;
+                }
+
+                if (layoutChange || srcStages != 0) {
+                    if (resource.type == ResourceType.BUFFER) {
+                        bufferBarriers.get()
+                                .sType$Default()
+                                .pNext(NULL)
+                                .srcAccessMask(srcAccess)
+                                .dstAccessMask(dstAccess)
+                                .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                                .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                                .buffer(resource.buffer.getBuffer())
+                                .offset(0)
+                                .size(VK_WHOLE_SIZE);
+                    }
+                    else {
+                        imageBarriers.get()
+                                .sType$Default()
+                                .pNext(NULL)
+                                .srcAccessMask(srcAccess)
+                                .dstAccessMask(dstAccess)
+                                .oldLayout(resource.layout)
+                                .newLayout(use.layout)
+                                .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                                .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                                .image(resource.getImage().getImage())
+                                .subresourceRange(range -> range
+                                        .aspectMask(resource.getImage().getAspectMask())
+                                        .baseMipLevel(0)
+                                        .levelCount(VK_REMAINING_MIP_LEVELS)
+                                        .baseArrayLayer(0)
+                                        .layerCount(VK_REMAINING_ARRAY_LAYERS));
+                    }
+                    srcStageMask |= srcStages;
+                    dstStageMask |= use.stages;
+                }
+
+                if (layoutChange || use.isWrite()) { // A layout transition counts as a write the using stages have seen
+                    resource.layout = use.layout;
+                    resource.writeStages = use.stages;
+                    resource.writeAccess = use.writeAccess;
+                    resource.readStages = use.isWrite() ? 0 : use.stages;
+                    resource.readAccess = use.isWrite() ? 0 : use.readAccess;
+                }
+                else {
+                    resource.readStages |= use.stages;
+                    resource.readAccess |= use.readAccess;
+                }
+                if (resource.slot != null) resource.slot.handOver(resource);
+            }
+
+            imageBarriers.flip();
+            bufferBarriers.flip();
+            if (imageBarriers.remaining() + bufferBarriers.remaining() == 0) return;
+            vkCmdPipelineBarrier(commandBuffer, srcStageMask == 0 ? VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT : srcStageMask,
+                    dstStageMask, 0, null, bufferBarriers, imageBarriers);
+            barrierBatchCount++;
+            barrierCount += imageBarriers.remaining() + bufferBarriers.remaining();
+        }
+    }
+
+    public void destroy() { // Frames in flight may still use the graph's objects, they go once those have finished
+        renderer.removeRenderGraph(this);
+        renderer.retire(this::destroyObjects);
+    }
+
+    protected void destroyObjects() {
+        for (Pass pass : passes) {
+            pass.destroyFramebuffers();
+            if (pass.renderPass != VK_NULL_HANDLE) vkDestroyRenderPass(renderer.getDevice(), pass.renderPass, null);
+        }
+        for (Resource resource : resources) {
+            if (resource.isTransient() && resource.image != null) resource.image.destroyObjects();
+        }
+        for (Slot slot : slots) {
+            renderer.getMemoryAllocator().free(slot.allocation);
+        }
+        slots.clear();
+    }
+
+    public int getPassCount() {
+        return passes.size();
+    }
+
+    public int getExecutedPassCount() { // Without culled passes, after compile
+        return executedPasses.size();
+    }
+
+    public long getTransientBytes() { // What the transient images would take without aliasing
+        return transientBytes;
+    }
+
+    public long getAllocatedBytes() { // What they take
+        return allocatedBytes;
+    }
+
+    public int getBarrierBatchCount() { // vkCmdPipelineBarrier calls of the last execute
+        return barrierBatchCount;
+    }
+
+    public int getBarrierCount() { // Image and buffer barriers of the last execute
+        return barrierCount;
+    }
+
+    public class Pass {
+        private final String name;
+        private final boolean graphics;
+        private final List<Use> uses = new ArrayList<>();
+        private final List<Resource> colorAttachments = new ArrayList<>();
+        private Resource depthAttachment;
+        private boolean sideEffects = false;
+        private Consumer<CmdRecorder> commands;
+        private long renderPass = VK_NULL_HANDLE;
+        private float[][] clearValues;
+        private Framebuffer[] framebuffers = new Framebuffer[0]; // Per swapchain image when rendering to a window
+        private int swapchainGeneration;
+
+        private Pass(String name, boolean graphics) {
+            this.name = name;
+            this.graphics = graphics;
+        }
+
+        public Pass color(Resource resource) { // Loads the previous contents if there are any
+            return color(resource, null);
+        }
+
+        public Pass color(Resource resource, float r, float g, float b, float a) {
+            return color(resource, new float[] {r, g, b, a});
+        }
+
+        private Pass color(Resource resource, float[] clearColor) {
+            if (!graphics) renderer.getLogger().error("Color attachments need a graphics pass, \"" + name + "\" is a compute pass");
+            Use use = use(resource, Access.COLOR_ATTACHMENT, true);
+            use.color = true;
+            use.clearValue = clearColor;
+            if (clearColor != null) use.readAccess = 0;
+            colorAttachments.add(resource);
+            return this;
+        }
+
+        public Pass depth(Resource resource) { // Tests against and writes the depth earlier passes left, e.g. after a depth pre-pass
+            return depth(resource, null);
+        }
+
+        public Pass depth(Resource resource, float clearDepth) {
+            return depth(resource, new float[] {clearDepth});
+        }
+
+        private Pass depth(Resource resource, float[] clearDepth) {
+            if (!graphics) renderer.getLogger().error("Depth attachments need a graphics pass, \"" + name + "\" is a compute pass");
+            if (depthAttachment != null) renderer.getLogger().error("Render graph pass \"" + name + "\" already has a depth attachment");
+            Use use = use(resource, Access.DEPTH_ATTACHMENT, true);
+            use.depth = true;
+            use.clearValue = clearDepth;
+            if (clearDepth != null) use.readAccess = 0;
+            depthAttachment = resource;
+            return this;
+        }
+
+        public Pass read(Resource resource, Access access) {
+            if (access.readAccess == 0 || access.isAttachment())
+                renderer.getLogger().error(access + " cannot be read, attachments are declared with color() and depth()");
+            use(resource, access, false);
+            return this;
+        }
+
+        public Pass write(Resource resource, Access access) {
+            if (access.writeAccess == 0 || access.isAttachment())
+                renderer.getLogger().error(access + " cannot be written, attachments are declared with color() and depth()");
+            use(resource, access, true);
+            return this;
+        }
+
+        public Pass sideEffects() { // Never culled, for passes whose results leave the graph some other way
+            sideEffects = true;
+            return this;
+        }
+
+        public Pass execute(Consumer<CmdRecorder> commands) { // Bind pipelines created for this pass with CmdRecorder.bindPipeline
+            this.commands = commands;
+            return this;
+        }
+
+        private Use use(Resource resource, Access access, boolean write) {
+            checkNotCompiled();
+            if (access.isAttachment() && (colorAttachments.contains(resource) || depthAttachment == resource))
+                renderer.getLogger().error(resource.name + " is already an attachment of " + name);
+            if (resource.type == ResourceType.BUFFER ? !access.forBuffers : access.imageUsage == 0)
+                renderer.getLogger().error(access + " cannot be used on " + resource.name);
+            if (resource.type == ResourceType.WINDOW && access != Access.COLOR_ATTACHMENT)
+                renderer.getLogger().error("Windows can only be used as color attachments, " + resource.name + " in " + name);
+            if (resource.type == ResourceType.IMAGE && (resource.image.getUsage() & access.imageUsage) != access.imageUsage)
+                renderer.getLogger().error(resource.name + " was not created with the image usage " + access + " needs");
+
+            int layout = resource.type == ResourceType.BUFFER ? VK_IMAGE_LAYOUT_UNDEFINED : access.layout;
+            for (Use use : uses) { // Several accesses of one resource in a pass are merged, they have to agree on the layout
+                if (use.resource != resource) continue;
+                if (use.layout != layout || use.isAttachment())
+                    renderer.getLogger().error(resource.name + " is used in conflicting ways by " + name);
+                use.stages |= access.stages;
+                use.readAccess |= access.readAccess;
+                if (write) use.writeAccess |= access.writeAccess;
+                use.imageUsage |= access.imageUsage;
+                return use;
+            }
+            Use use = new Use(resource, access.stages, access.readAccess, write ? access.writeAccess : 0, layout);
+            use.imageUsage = access.imageUsage;
+            uses.add(use);
+            return use;
+        }
+
+        public List<Integer> getColorFormats() { // For Pipelines recorded in this pass
+            return colorAttachments.stream().map(resource -> resource.format).toList();
+        }
+
+        public int getDepthFormat() { // VK_FORMAT_UNDEFINED without depth attachment
+            return depthAttachment == null ? VK_FORMAT_UNDEFINED : depthAttachment.format;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private void createRenderPass() {
+            try (MemoryStack stack = MemoryStack.stackPush()) {
+                LongBuffer lb = stack.mallocLong(1);
+
+                if (colorAttachments.isEmpty() && depthAttachment == null)
+                    renderer.getLogger().error("Graphics pass \"" + name + "\" has no attachments");
+                // Layouts are transitioned by the graph's barriers, so attachments stay in their attachment layout
+                int colorCount = colorAttachments.size();
+                int attachmentCount = colorCount + (depthAttachment == null ? 0 : 1);
+                VkAttachmentDescription.Buffer attachmentDescription = VkAttachmentDescription.malloc(attachmentCount, stack);
+                VkAttachmentReference.Buffer colorAttachmentReference = VkAttachmentReference.malloc(colorCount, stack);
+                VkAttachmentReference depthAttachmentReference = null;
+                clearValues = new float[attachmentCount][];
+                int i = 0;
+                for (Use use : uses) {
+                    if (!use.isAttachment()) continue;
+                    int attachment = use.depth ? colorCount : i++; // Depth after the colors, like Framebuffer orders them
+                    attachmentDescription.get(attachment)
+                            .flags(0)
+                            .format(use.resource.format)
+                            .samples(VK_SAMPLE_COUNT_1_BIT)
+                            .loadOp(use.loadOp)
+                            .storeOp(use.storeOp)
+                            .stencilLoadOp(VK_ATTACHMENT_LOAD_OP_DONT_CARE)
+                            .stencilStoreOp(VK_ATTACHMENT_STORE_OP_DONT_CARE)
+                            .initialLayout(use.layout)
+                            .finalLayout(use.layout);
+                    if (use.depth) {
+                        depthAttachmentReference = VkAttachmentReference.malloc(stack)
+                                .attachment(attachment)
+                                .layout(use.layout);
+                        clearValues[attachment] = use.clearValue == null ? new float[1] : use.clearValue;
+                    }
+                    else {
+                        colorAttachmentReference.get(attachment)
+                                .attachment(attachment)
+                                .layout(use.layout);
+                        clearValues[attachment] = use.clearValue == null ? new float[4] : use.clearValue;
+                    }
+                }
+                VkSubpassDescription.Buffer subpassDescription = VkSubpassDescription.calloc(1, stack)
+                        .flags(0)
+                        .pipelineBindPoint(VK_PIPELINE_BIND_POINT_GRAPHICS)
+                        .colorAttachmentCount(colorCount)
+                        .pColorAttachments(colorAttachmentReference)
+                        .pDepthStencilAttachment(depthAttachmentReference);
+                VkRenderPassCreateInfo renderPassInfo = VkRenderPassCreateInfo.malloc(stack)
+                        .sType$Default()
+                        .pNext(NULL)
+                        .flags(0)
+                        .pAttachments(attachmentDescription)
+                        .pSubpasses(subpassDescription)
+                        .pDependencies(null); // Dependencies are the barriers recorded before the pass
+                renderer.chErr(vkCreateRenderPass(renderer.getDevice(), renderPassInfo, null, lb));
+                renderPass = lb.get(0);
+            }
+        }
+
+        private Framebuffer getFramebuffer() { // Created on first use, for windows again once the swapchain was recreated
+            Resource window = null;
+            for (Resource resource : colorAttachments) {
+                if (resource.type == ResourceType.WINDOW) window = resource;
+            }
+            int index = 0, count = 1;
+            if (window != null) {
+                index = window.imageIndex;
+                count = window.windowFramebuffer.getWindow().getSwapchainImages().length;
+                int generation = window.windowFramebuffer.getWindow().getSwapchainGeneration();
+                if (generation != swapchainGeneration) {
+                    Framebuffer[] oldFramebuffers = framebuffers;
+                    renderer.retire(() -> {
+                        for (Framebuffer oldFramebuffer : oldFramebuffers) {
+                            if (oldFramebuffer != null) oldFramebuffer.destroyObjects();
+                        }
+                    });
+                    framebuffers = new Framebuffer[0];
+                    swapchainGeneration = generation;
+                }
+            }
+            if (framebuffers.length != count) framebuffers = new Framebuffer[count];
+            if (framebuffers[index] == null) {
+                List<Image> images = colorAttachments.stream().map(Resource::getImage).toList();
+                Image depthImage = depthAttachment == null ? null : depthAttachment.getImage();
+                // Transient attachments keep the size the graph was built for, a resized swapchain no longer matches them
+                List<Image> attachments = new ArrayList<>(images);
+                if (depthImage != null) attachments.add(depthImage);
+                Image first = attachments.get(0);
+                for (Image image : attachments) {
+                    if (image.getWidth() != first.getWidth() || image.getHeight() != first.getHeight())
+                        renderer.getLogger().error("Attachments of render graph pass \"" + name + "\" differ in size after a window"
+                                + " resize, check RenderGraph.isOutdated before executing and rebuild the graph");
+                }
+                framebuffers[index] = new Framebuffer(images, depthImage, renderPass, renderer);
+            }
+            return framebuffers[index];
+        }
+
+        private void destroyFramebuffers() {
+            for (Framebuffer framebuffer : framebuffers) {
+                if (framebuffer != null) framebuffer.destroyObjects();
+            }
+            framebuffers = new Framebuffer[0];
+        }
+    }
+
+    public static class Resource {
+        private final String name;
+        private final ResourceType type;
+        private final int width, height, format;
+        private int usage = 0; // Of transient images, everything the passes need
+        private Image image;
+        private Buffer buffer;
+        private WindowFramebuffer windowFramebuffer;
+        private int initialLayout = VK_IMAGE_LAYOUT_UNDEFINED, finalLayout = VK_IMAGE_LAYOUT_UNDEFINED;
+        private int firstUse = -1, lastUse = -1; // Indices into the executed passes, -1 if unused
+        private long size, alignment;
+        private int memoryTypeBits;
+        private Slot slot;
+        private boolean handedOver;
+        private int imageIndex; // Swapchain image of this execute
+        // State while executing, reads are the stages that have seen the last write
+        private int layout, writeStages, writeAccess, readStages, readAccess;
+
+        private Resource(String name, ResourceType type, int width, int height, int format) {
+            this.name = name;
+            this.type = type;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+        }
+
+        private void beginFrame() {
+            layout = initialLayout;
+            writeStages = 0;
+            writeAccess = 0;
+            readAccess = 0;
+            switch (type) {
+                // Whatever used the image or buffer before, including this graph's previous execute, has to be done
+                case IMAGE, BUFFER -> readStages = VK_PIPELINE_STAGE_ALL_COMMANDS_BIT;
+                // The stage the frame waits for the image acquisition at
+                case WINDOW -> {
+                    readStages = VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT;
+                    imageIndex = windowFramebuffer.requestNextImage();
+                }
+                // Taken from the previous occupant of the memory on first use, see recordBarriers
+                case TRANSIENT -> {
+                    readStages = 0;
+                    handedOver = false;
+                }
+            }
+        }
+
+        private boolean isTransient() {
+            return type == ResourceType.TRANSIENT;
+        }
+
+        private boolean isImported() {
+            return type != ResourceType.TRANSIENT;
+        }
+
+        private Image getImage() {
+            return type == ResourceType.WINDOW ? windowFramebuffer.getWindow().getSwapchainImages()[imageIndex] : image;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+    }
+
+    private static class Slot { // Memory shared by transient images with disjoint lifetimes
+        private final List<Resource> occupants = new ArrayList<>();
+        private long size, alignment = 1;
+        private int memoryTypeBits = ~0;
+        private MemoryAllocator.Allocation allocation;
+        private int stages, access; // Of whichever occupant used the memory last
+
+        private boolean fits(Resource resource) {
+            if ((memoryTypeBits & resource.memoryTypeBits) == 0) return false;
+            for (Resource occupant : occupants) {
+                if (resource.firstUse <= occupant.lastUse && occupant.firstUse <= resource.lastUse) return false;
+            }
+            return true;
+        }
+
+        private void add(Resource resource) {
+            occupants.add(resource);
+            resource.slot = this;
+            size = Math.max(size, resource.size);
+            alignment = Math.max(alignment, resource.alignment);
+            memoryTypeBits &= resource.memoryTypeBits;
+        }
+
+        private void handOver(Resource resource) {
+            stages = resource.writeStages | resource.readStages;
+            access = resource.writeAccess;
+        }
+    }
+
+    private static class Use {
+        private final Resource resource;
+        private final int layout;
+        private int stages, readAccess, writeAccess, imageUsage;
+        private boolean color, depth;
+        private float[] clearValue; // null to load or discard, {r, g, b, a} for colors and {depth} for depth
+        private int loadOp = VK_ATTACHMENT_LOAD_OP_CLEAR, storeOp = VK_ATTACHMENT_STORE_OP_STORE;
+
+        private Use(Resource resource, int stages, int readAccess, int writeAccess, int layout) {
+            this.resource = resource;
+            this.stages = stages;
+            this.readAccess = readAccess;
+            this.writeAccess = writeAccess;
+            this.layout = layout;
+        }
+
+        private boolean isWrite() {
+            return writeAccess != 0;
+        }
+
+        private boolean isAttachment() {
+            return color || depth;
+        }
+    }
+
+    private enum ResourceType {
+        TRANSIENT, IMAGE, WINDOW, BUFFER
+    }
+
+    public enum Access { // How a pass uses a resource, with the stages, access masks and image layout that follow
+        COLOR_ATTACHMENT(VK_PIPELINE_STAGE_COLOR_ATTACHMENT_OUTPUT_BIT, VK_ACCESS_COLOR_ATTACHMENT_READ_BIT, VK_ACCESS_COLOR_ATTACHMENT_WRITE_BIT,
+                VK_IMAGE_LAYOUT_COLOR_ATTACHMENT_OPTIMAL, VK_IMAGE_USAGE_COLOR_ATTACHMENT_BIT, false),
+        DEPTH_ATTACHMENT(VK_PIPELINE_STAGE_EARLY_FRAGMENT_TESTS_BIT | VK_PIPELINE_STAGE_LATE_FRAGMENT_TESTS_BIT,
+                VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_READ_BIT, VK_ACCESS_DEPTH_STENCIL_ATTACHMENT_WRITE_BIT,
+                VK_IMAGE_LAYOUT_DEPTH_STENCIL_ATTACHMENT_OPTIMAL, VK_IMAGE_USAGE_DEPTH_STENCIL_ATTACHMENT_BIT, false),
+        SAMPLED_FRAGMENT(VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT, 0,
+                VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, VK_IMAGE_USAGE_SAMPLED_BIT, false),
+        SAMPLED_COMPUTE(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT, 0,
+                VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL, VK_IMAGE_USAGE_SAMPLED_BIT, false),
+        STORAGE_FRAGMENT(VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+                VK_IMAGE_LAYOUT_GENERAL, VK_IMAGE_USAGE_STORAGE_BIT, true),
+        STORAGE_COMPUTE(VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT, VK_ACCESS_SHADER_READ_BIT, VK_ACCESS_SHADER_WRITE_BIT,
+                VK_IMAGE_LAYOUT_GENERAL, VK_IMAGE_USAGE_STORAGE_BIT, true),
+        VERTEX_BUFFER(VK_PIPELINE_STAGE_VERTEX_INPUT_BIT, VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT, 0,
+                VK_IMAGE_LAYOUT_UNDEFINED, 0, true),
+        INDEX_BUFFER(VK_PIPELINE_STAGE_VERTEX_INPUT_BIT, VK_ACCESS_INDEX_READ_BIT, 0,
+                VK_IMAGE_LAYOUT_UNDEFINED, 0, true),
+        INDIRECT_BUFFER(VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT, VK_ACCESS_INDIRECT_COMMAND_READ_BIT, 0,
+                VK_IMAGE_LAYOUT_UNDEFINED, 0, true),
+        TRANSFER_SRC(VK_PIPELINE_STAGE_TRANSFER_BIT, VK_ACCESS_TRANSFER_READ_BIT, 0,
+                VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL, VK_IMAGE_USAGE_TRANSFER_SRC_BIT, true),
+        TRANSFER_DST(VK_PIPELINE_STAGE_TRANSFER_BIT, 0, VK_ACCESS_TRANSFER_WRITE_BIT,
+                VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, VK_IMAGE_USAGE_TRANSFER_DST_BIT, true);
+
+        private final int stages, readAccess, writeAccess, layout, imageUsage;
+        private final boolean forBuffers;
+
+        Access(int stages, int readAccess, int writeAccess, int layout, int imageUsage, boolean forBuffers) {
+            this.stages = stages;
+            this.readAccess = readAccess;
+            this.writeAccess = writeAccess;
+            this.layout = layout;
+            this.imageUsage = imageUsage;
+            this.forBuffers = forBuffers;
+        }
+
+        private boolean isAttachment() {
+            return this == COLOR_ATTACHMENT || this == DEPTH_ATTACHMENT;
+        }
+    }
+}
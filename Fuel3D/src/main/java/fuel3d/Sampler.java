@@ -0,0 +1,75 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkSamplerCreateInfo;
+
+import java.nio.LongBuffer;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class Sampler { // How SAMPLED_IMAGE descriptors filter and wrap, one sampler can serve any number of images
+    private final Fuel3D renderer;
+    private final Settings settings;
+    private long sampler;
+
+    public Sampler(Fuel3D renderer) {
+        this(new Settings(), renderer);
+    }
+
+    public Sampler(Settings settings, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.settings = settings;
+        renderer.addSampler(this);
+
+        create();
+    }
+
+    protected void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            int filter = settings.linear ? VK_FILTER_LINEAR : VK_FILTER_NEAREST;
+            int addressMode = settings.repeat ? VK_SAMPLER_ADDRESS_MODE_REPEAT : VK_SAMPLER_ADDRESS_MODE_CLAMP_TO_EDGE;
+            VkSamplerCreateInfo samplerInfo = VkSamplerCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .magFilter(filter)
+                    .minFilter(filter)
+                    .mipmapMode(settings.linear ? VK_SAMPLER_MIPMAP_MODE_LINEAR : VK_SAMPLER_MIPMAP_MODE_NEAREST)
+                    .addressModeU(addressMode)
+                    .addressModeV(addressMode)
+                    .addressModeW(addressMode)
+                    .mipLodBias(0.0f)
+                    .anisotropyEnable(false) // TODO: anisotropic filtering
+                    .maxAnisotropy(1.0f)
+                    .compareEnable(false)
+                    .compareOp(VK_COMPARE_OP_ALWAYS)
+                    .minLod(0.0f)
+                    .maxLod(VK_LOD_CLAMP_NONE)
+                    .borderColor(VK_BORDER_COLOR_INT_OPAQUE_BLACK)
+                    .unnormalizedCoordinates(false);
+            renderer.chErr(vkCreateSampler(renderer.getDevice(), samplerInfo, null, lb));
+            sampler = lb.get(0);
+        }
+    }
+
+    protected void destroyObjects() {
+        vkDestroySampler(renderer.getDevice(), sampler, null);
+    }
+
+    public void destroy() {
+        destroyObjects();
+        renderer.removeSampler(this);
+    }
+
+    protected long getSampler() {
+        return sampler;
+    }
+
+    public static class Settings {
+        public boolean linear = true; // Nearest otherwise, also for mipmaps
+        public boolean repeat = true; // Clamp to edge otherwise
+    }
+}
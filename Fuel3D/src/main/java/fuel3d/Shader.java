@@ -31,7 +31,7 @@ public class Shader {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             LongBuffer lb = stack.mallocLong(1);
 
-            ByteBuffer codeByteBuf = stack.malloc(code.length).put(code);
+            ByteBuffer codeByteBuf = memAlloc(code.length).put(code); // Heap allocated, large shaders would overflow the stack
             codeByteBuf.flip();
 
             VkShaderModuleCreateInfo shaderModuleInfo = VkShaderModuleCreateInfo.malloc(stack)
@@ -42,6 +42,7 @@ public class Shader {
 
             renderer.chErr(vkCreateShaderModule(renderer.getDevice(), shaderModuleInfo, null, lb));
             shader = lb.get(0);
+            memFree(codeByteBuf);
         }
     }
 
@@ -67,71 +68,16 @@ public class Shader {
     }
 
     public static Shader fromGLSLCode(String code, ShaderType type, Fuel3D renderer) {
-        long compiler = shaderc_compiler_initialize();
-        long options = shaderc_compile_options_initialize();
-
         renderer.getLogger().log(Logger.MessageType.INFO, "Compiling shader...");
-
-        long result = shaderc_compile_into_spv(
-                compiler,
-                code,
-                type.getTypeId(),
-                "",
-                "main",
-                options
-        );
-
-        if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success
-                || shaderc_result_get_length(result) == 0
-                || shaderc_result_get_bytes(result) == null) {
-            renderer.getLogger().error("Shader compilation error: " + shaderc_result_get_error_message(result));
-        }
-        ByteBuffer resultCodeBuffer = shaderc_result_get_bytes(result);
-        if (resultCodeBuffer == null) renderer.getLogger().error("Returned compiled code is null");
-        byte[] resultCode = new byte[resultCodeBuffer.capacity()];
-
-        for (int i = 0; i < resultCodeBuffer.capacity(); i++) {
-            resultCode[i] = resultCodeBuffer.get(i);
-        }
-
-        shaderc_result_release(result);
-        shaderc_compile_options_release(options);
-        shaderc_compiler_release(compiler);
-
-        return new Shader(resultCode, renderer);
+        return fromGLSL(code, "", type, renderer);
     }
 
     public static Shader fromGLSLFile(Path path, ShaderType type, Fuel3D renderer) throws IOException {
-        long compiler = shaderc_compiler_initialize();
-        long options = shaderc_compile_options_initialize();
-
-        long result = shaderc_compile_into_spv(
-                compiler,
-                Files.readString(path),
-                type.getTypeId(),
-                path.getFileName().toString(),
-                "main",
-                options
-        );
-
-        if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success
-                || shaderc_result_get_length(result) == 0
-                || shaderc_result_get_bytes(result) == null) {
-            renderer.getLogger().error("Shader compilation error: " + shaderc_result_get_error_message(result));
-        }
-        ByteBuffer resultCodeBuffer = shaderc_result_get_bytes(result);
-        if (resultCodeBuffer == null) renderer.getLogger().error("Returned compiled code is null");
-        byte[] resultCode = new byte[resultCodeBuffer.capacity()];
-
-        for (int i = 0; i < resultCodeBuffer.capacity(); i++) {
-            resultCode[i] = resultCodeBuffer.get(i);
-        }
-
-        shaderc_result_release(result);
-        shaderc_compile_options_release(options);
-        shaderc_compiler_release(compiler);
+        return fromGLSL(Files.readString(path), path.getFileName().toString(), type, renderer);
+    }
 
-        return new Shader(resultCode, renderer);
+    private static Shader fromGLSL(String code, String name, ShaderType type, Fuel3D renderer) {
+        return renderer.getShaderCompiler().compile(code, name, type);
     }
 
     public static Shader fromGLSLFile(String path, ShaderType type, Fuel3D renderer) throws IOException {
@@ -139,7 +85,7 @@ public class Shader {
     }
 
     public enum ShaderType {
-        VertexShader(shaderc_vertex_shader), FragmentShader(shaderc_fragment_shader);
+        VertexShader(shaderc_vertex_shader), FragmentShader(shaderc_fragment_shader), ComputeShader(shaderc_compute_shader);
 
         private final int typeId;
 
@@ -147,7 +93,7 @@ public class Shader {
             this.typeId = typeId;
         }
 
-        private int getTypeId() {
+        protected int getTypeId() {
             return typeId;
         }
     }
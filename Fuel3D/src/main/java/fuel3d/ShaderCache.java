@@ -0,0 +1,147 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.util.shaderc.Shaderc.shaderc_get_spv_version;
+
+public class ShaderCache { // Content addressed on-disk cache of compiled SPIR-V
+    private final Fuel3D renderer;
+    private final Path directory;
+    private final String compilerVersion;
+    private final AtomicInteger hits = new AtomicInteger(), misses = new AtomicInteger();
+
+    private static final int SPIRV_MAGIC = 0x07230203;
+    private static final String EXTENSION = ".spv";
+
+    protected ShaderCache(Path directory, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.directory = directory;
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer version = stack.mallocInt(1);
+            IntBuffer revision = stack.mallocInt(1);
+            shaderc_get_spv_version(version, revision);
+            compilerVersion = org.lwjgl.Version.getVersion() + ";spv=" + version.get(0) + "." + revision.get(0);
+        }
+
+        try {
+            Files.createDirectories(directory);
+        }
+        catch (IOException e) {
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Cannot create shader cache directory " + directory + ": " + e.getMessage());
+        }
+    }
+
+    protected String key(String source, Shader.ShaderType type, String options) { // Any change in the inputs gives a new key
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(compilerVersion.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(type.name().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(options.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(source.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    protected byte[] load(String key) { // null on a miss
+        Path path = directory.resolve(key + EXTENSION);
+        if (!Files.isRegularFile(path)) {
+            misses.incrementAndGet();
+            renderer.getLogger().log(Logger.MessageType.VERBOSE, "Shader cache miss: " + key);
+            return null;
+        }
+
+        // Read rather than mapped, a mapped view keeps the file from being deleted or replaced on Windows until it is collected
+        byte[] code = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            if (size >= 4 && size % 4 == 0 && size <= Integer.MAX_VALUE
+                    && readFully(channel, header) && header.getInt(0) == SPIRV_MAGIC) {
+                code = new byte[(int) size];
+                ByteBuffer body = ByteBuffer.wrap(code);
+                body.put(header.flip());
+                if (!readFully(channel, body)) code = null; // Truncated while reading
+            }
+        }
+        catch (IOException e) {
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Cannot read shader cache entry " + path + ": " + e.getMessage());
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (code == null) { // The channel is closed here, so the entry can be deleted
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Discarding corrupt shader cache entry " + path);
+            misses.incrementAndGet();
+            try {
+                Files.deleteIfExists(path);
+            }
+            catch (IOException e) {
+                renderer.getLogger().log(Logger.MessageType.WARNING, "Cannot delete shader cache entry " + path + ": " + e.getMessage());
+            }
+            return null;
+        }
+        hits.incrementAndGet();
+        renderer.getLogger().log(Logger.MessageType.VERBOSE, "Shader cache hit: " + key);
+        return code;
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException { // false at end of file
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) return false;
+        }
+        return true;
+    }
+
+    protected void store(String key, byte[] code) {
+        Path path = directory.resolve(key + EXTENSION);
+        try {
+            Path temp = Files.createTempFile(directory, key, ".tmp");
+            Files.write(temp, code);
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        catch (IOException e) {
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Cannot write shader cache entry " + path + ": " + e.getMessage());
+        }
+    }
+
+    protected void logStatistics() {
+        renderer.getLogger().log(Logger.MessageType.INFO,
+                "Shader cache: " + hits.get() + " hits, " + misses.get() + " misses (" + directory + ")");
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+}
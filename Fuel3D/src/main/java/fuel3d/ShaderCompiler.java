@@ -0,0 +1,134 @@
+package fuel3d;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.util.shaderc.Shaderc.*;
+
+public class ShaderCompiler { // Compiles GLSL on a bounded thread pool, with one long-lived shaderc compiler per thread
+    private static final String COMPILE_OPTIONS = "entry=main"; // Part of the cache key, update when changing the compile options
+
+    private final Fuel3D renderer;
+    private final int threadCount;
+    private ExecutorService executor = null; // Started on the first async compile
+    private final List<CompilerContext> contexts = new ArrayList<>();
+    private final ThreadLocal<CompilerContext> threadContext = ThreadLocal.withInitial(this::createContext);
+
+    protected ShaderCompiler(int threadCount, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public CompletableFuture<Shader> compileAsync(Path path, Shader.ShaderType type) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return compile(Files.readString(path), path.getFileName().toString(), type);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, getExecutor());
+    }
+
+    public CompletableFuture<Shader> compileAsync(String code, Shader.ShaderType type) {
+        return CompletableFuture.supplyAsync(() -> compile(code, "", type), getExecutor());
+    }
+
+    public List<CompletableFuture<Shader>> compileAll(List<Job> jobs) {
+        List<CompletableFuture<Shader>> results = new ArrayList<>(jobs.size());
+        for (Job job : jobs) {
+            results.add(compileAsync(job.path(), job.type()));
+        }
+        return results;
+    }
+
+    protected Shader compile(String code, String name, Shader.ShaderType type) { // Runs on the calling thread
+        ShaderCache cache = renderer.getShaderCache();
+        String key = null;
+        if (cache != null) {
+            key = cache.key(code, type, COMPILE_OPTIONS);
+            byte[] cachedCode = cache.load(key);
+            if (cachedCode != null) return new Shader(cachedCode, renderer);
+        }
+
+        CompilerContext context = threadContext.get();
+        long result = shaderc_compile_into_spv(
+                context.compiler,
+                code,
+                type.getTypeId(),
+                name,
+                "main",
+                context.options
+        );
+
+        try {
+            if (shaderc_result_get_compilation_status(result) != shaderc_compilation_status_success
+                    || shaderc_result_get_length(result) == 0) {
+                renderer.getLogger().error("Shader compilation error (" + name + "): " + shaderc_result_get_error_message(result));
+            }
+            ByteBuffer resultCodeBuffer = shaderc_result_get_bytes(result);
+            if (resultCodeBuffer == null) renderer.getLogger().error("Returned compiled code is null");
+            byte[] resultCode = new byte[resultCodeBuffer.remaining()];
+            resultCodeBuffer.get(resultCode);
+
+            if (cache != null) cache.store(key, resultCode);
+            return new Shader(resultCode, renderer);
+        }
+        finally {
+            shaderc_result_release(result);
+        }
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable, "Fuel3D-ShaderCompiler-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    private CompilerContext createContext() {
+        CompilerContext context = new CompilerContext(shaderc_compiler_initialize(), shaderc_compile_options_initialize());
+        synchronized (contexts) {
+            contexts.add(context);
+        }
+        return context;
+    }
+
+    protected void destroy() {
+        synchronized (this) {
+            if (executor != null) {
+                executor.shutdown();
+                try {
+                    if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+                        renderer.getLogger().log(Logger.MessageType.WARNING, "Shader compiler threads did not finish in time");
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        synchronized (contexts) {
+            for (CompilerContext context : contexts) {
+                shaderc_compile_options_release(context.options);
+                shaderc_compiler_release(context.compiler);
+            }
+            contexts.clear();
+        }
+    }
+
+    public record Job(Path path, Shader.ShaderType type) { }
+
+    private record CompilerContext(long compiler, long options) { }
+}
@@ -0,0 +1,102 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkBufferCopy;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkMemoryBarrier;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class StagingRing { // Persistently mapped upload buffer, split into one region per frame in flight
+    private final Fuel3D renderer;
+    private final Buffer buffer;
+    private final long frameSize;
+    private long head, end;
+    private boolean copiesPending = false;
+    private final List<List<Buffer>> overflow = new ArrayList<>(); // Per frame, uploads that did not fit into the frame region
+    private int frame;
+
+    // Every consumer of uploaded buffers: draws, indirect arguments and compute dispatches
+    private static final int READ_STAGES = VK_PIPELINE_STAGE_DRAW_INDIRECT_BIT
+            | VK_PIPELINE_STAGE_VERTEX_INPUT_BIT
+            | VK_PIPELINE_STAGE_VERTEX_SHADER_BIT
+            | VK_PIPELINE_STAGE_FRAGMENT_SHADER_BIT
+            | VK_PIPELINE_STAGE_COMPUTE_SHADER_BIT;
+    private static final int READ_ACCESS = VK_ACCESS_INDIRECT_COMMAND_READ_BIT
+            | VK_ACCESS_VERTEX_ATTRIBUTE_READ_BIT
+            | VK_ACCESS_INDEX_READ_BIT
+            | VK_ACCESS_UNIFORM_READ_BIT
+            | VK_ACCESS_SHADER_READ_BIT;
+
+    protected StagingRing(long frameSize, int frameCount, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.frameSize = frameSize;
+        buffer = new Buffer(frameSize * frameCount, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryAllocator.MemoryUsage.CPU_TO_GPU, renderer);
+        for (int i = 0; i < frameCount; i++) {
+            overflow.add(new ArrayList<>());
+        }
+    }
+
+    protected void beginFrame(int frame) { // The frame's previous uploads are retired once its fence has signaled
+        this.frame = frame;
+        head = frame * frameSize;
+        end = head + frameSize;
+        copiesPending = false;
+        overflow.get(frame).forEach(Buffer::destroy);
+        overflow.get(frame).clear();
+    }
+
+    // Recorded into the frame's command buffer, so copies execute in call order. Uploads that do not fit into the frame region get
+    // their own staging buffer, which lives until the frame has retired
+    protected void upload(VkCommandBuffer commandBuffer, ByteBuffer data, Buffer dst, long dstOffset) {
+        long size = data.remaining();
+        long offset = (head + 3) & ~3L; // vkCmdCopyBuffer offsets only need 4 byte alignment
+        Buffer src = buffer;
+        if (offset + size > end) {
+            renderer.getLogger().log(Logger.MessageType.WARNING,
+                    "Staging ring full, " + size + " bytes use an extra staging buffer. Consider a larger stagingBufferSize");
+            src = new Buffer(size, VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryAllocator.MemoryUsage.CPU_TO_GPU, renderer);
+            overflow.get(frame).add(src);
+            offset = 0;
+        } else {
+            head = offset + size;
+        }
+
+        memCopy(memAddress(data), src.getMappedAddress() + offset, size);
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            if (!copiesPending) { // Previous frames may still be reading the destination buffers
+                vkCmdPipelineBarrier(commandBuffer, READ_STAGES, VK_PIPELINE_STAGE_TRANSFER_BIT, 0, null, null, null);
+                copiesPending = true;
+            }
+
+            VkBufferCopy.Buffer region = VkBufferCopy.malloc(1, stack)
+                    .srcOffset(offset)
+                    .dstOffset(dstOffset)
+                    .size(size);
+            vkCmdCopyBuffer(commandBuffer, src.getBuffer(), dst.getBuffer(), region);
+        }
+    }
+
+    protected void flush(VkCommandBuffer commandBuffer) { // One barrier for all copies recorded since the last flush
+        if (!copiesPending) return;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkMemoryBarrier.Buffer memoryBarrier = VkMemoryBarrier.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                    .dstAccessMask(READ_ACCESS);
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, READ_STAGES, 0, memoryBarrier, null, null);
+        }
+        copiesPending = false;
+    }
+
+    public long getFrameSize() {
+        return frameSize;
+    }
+}
@@ -0,0 +1,64 @@
+package fuel3d;
+
+import java.util.concurrent.CompletableFuture;
+
+// A sampled image loaded by TextureLoader. It may be used in descriptors once isReady() returns true,
+// until then it should be skipped or replaced with a placeholder.
+public class Texture {
+    private final Fuel3D renderer;
+    private final String name;
+    private final Sampler sampler;
+    private final CompletableFuture<Texture> loaded = new CompletableFuture<>(); // Completes once the upload is submitted
+    private volatile Image image; // null until decoded
+    private volatile long uploadValue = -1; // On the upload queue
+    private boolean ready = false; // Cached, so the queue is no longer polled
+
+    protected Texture(String name, Sampler sampler, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.name = name;
+        this.sampler = sampler;
+    }
+
+    protected void uploaded(Image image, long uploadValue) { // Called on a loader thread
+        this.image = image;
+        this.uploadValue = uploadValue;
+        loaded.complete(this);
+    }
+
+    protected void failed(Throwable cause) {
+        loaded.completeExceptionally(cause);
+    }
+
+    public boolean isReady() { // Does not block, true once the GPU has finished the upload and mip generation
+        if (!ready && uploadValue >= 0) ready = renderer.getUploadQueue().isComplete(uploadValue);
+        return ready;
+    }
+
+    public boolean isFailed() {
+        return loaded.isCompletedExceptionally();
+    }
+
+    public CompletableFuture<Texture> getLoad() { // For chaining, completes on a loader thread
+        return loaded;
+    }
+
+    public Image getImage() { // null until loaded
+        return image;
+    }
+
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Frames in flight may still sample it, so the image goes once they have finished. The upload queue shares the
+    // graphics VkQueue, so that also covers an upload still running. A texture still decoding is destroyed when it is done.
+    public void destroy() {
+        loaded.whenComplete((texture, cause) -> {
+            if (image != null) renderer.retire(image::destroy);
+        });
+    }
+}
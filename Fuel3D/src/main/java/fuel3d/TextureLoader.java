@@ -0,0 +1,199 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.*;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.stb.STBImage.*;
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Loads textures without blocking the render thread: stb decodes on loader threads into off-heap memory, which is copied
+// into a staging buffer, and the copy and a vkCmdBlitImage mip chain are submitted on the upload queue. Blits need a
+// graphics capable queue, so that is a DeviceQueue on the graphics family rather than the transfer queue.
+public class TextureLoader {
+    private final Fuel3D renderer;
+    private final int threadCount;
+    private ExecutorService executor = null; // Started on the first load
+    private Sampler defaultSampler = null; // Linear, repeat, all mip levels
+
+    protected TextureLoader(int threadCount, Fuel3D renderer) {
+        this.renderer = renderer;
+        this.threadCount = Math.max(1, threadCount);
+    }
+
+    public Texture load(Path path, boolean srgb) { // srgb for color data, false for normal maps and the like
+        return load(path, srgb, getDefaultSampler());
+    }
+
+    public Texture load(Path path, boolean srgb, Sampler sampler) { // Returns right away, see Texture.isReady
+        Texture texture = new Texture(path.getFileName().toString(), sampler, renderer);
+        getExecutor().execute(() -> {
+            try {
+                decodeAndUpload(texture, path, srgb);
+            }
+            catch (Throwable e) {
+                texture.failed(e);
+                renderer.getLogger().log(Logger.MessageType.WARNING, "Failed to load texture " + path + ": " + e.getMessage());
+            }
+        });
+        return texture;
+    }
+
+    private void decodeAndUpload(Texture texture, Path path, boolean srgb) { // Runs on a loader thread
+        long start = System.nanoTime();
+        int width, height;
+        Buffer staging;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1), h = stack.mallocInt(1), channels = stack.mallocInt(1);
+            ByteBuffer pixels = stbi_load(path.toString(), w, h, channels, 4); // Always RGBA, 3 channel formats are rarely sampleable
+            if (pixels == null) renderer.getLogger().error("stb could not decode " + path + ": " + stbi_failure_reason());
+            width = w.get(0);
+            height = h.get(0);
+            try {
+                staging = new Buffer(pixels.remaining(), VK_BUFFER_USAGE_TRANSFER_SRC_BIT, MemoryAllocator.MemoryUsage.CPU_TO_GPU, renderer);
+                staging.write(pixels, 0);
+            }
+            finally {
+                stbi_image_free(pixels);
+            }
+        }
+
+        int mipLevels = 32 - Integer.numberOfLeadingZeros(Math.max(width, height)); // floor(log2) + 1
+        int format = srgb ? VK_FORMAT_R8G8B8A8_SRGB : VK_FORMAT_R8G8B8A8_UNORM;
+        Image image = new Image(width, height, format,
+                VK_IMAGE_USAGE_TRANSFER_SRC_BIT | VK_IMAGE_USAGE_TRANSFER_DST_BIT | VK_IMAGE_USAGE_SAMPLED_BIT, mipLevels, renderer);
+        int filter = supportsLinearBlit(format) ? VK_FILTER_LINEAR : VK_FILTER_NEAREST;
+
+        long value = renderer.getUploadQueue().submit(commandBuffer -> recordUpload(commandBuffer, staging, image, filter),
+                staging::destroy);
+        texture.uploaded(image, value);
+        renderer.getLogger().log(Logger.MessageType.VERBOSE, String.format("Texture %s (%dx%d, %d mips) decoded in %.2f ms",
+                texture.getName(), width, height, mipLevels, (System.nanoTime() - start) / 1e6));
+    }
+
+    private void recordUpload(VkCommandBuffer commandBuffer, Buffer staging, Image image, int filter) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkImageMemoryBarrier.Buffer barrier = VkImageMemoryBarrier.malloc(1, stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .srcAccessMask(0)
+                    .dstAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                    .oldLayout(VK_IMAGE_LAYOUT_UNDEFINED)
+                    .newLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL)
+                    .srcQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .dstQueueFamilyIndex(VK_QUEUE_FAMILY_IGNORED)
+                    .image(image.getImage())
+                    .subresourceRange(range -> range
+                            .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                            .baseMipLevel(0)
+                            .levelCount(image.getMipLevels())
+                            .baseArrayLayer(0)
+                            .layerCount(1));
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TOP_OF_PIPE_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT,
+                    0, null, null, barrier);
+
+            VkBufferImageCopy.Buffer region = VkBufferImageCopy.calloc(1, stack)
+                    .bufferOffset(0)
+                    .bufferRowLength(0)
+                    .bufferImageHeight(0)
+                    .imageSubresource(subresource -> subresource
+                            .aspectMask(VK_IMAGE_ASPECT_COLOR_BIT)
+                            .mipLevel(0)
+                            .baseArrayLayer(0)
+                            .layerCount(1))
+                    .imageExtent(extent -> extent.set(image.getWidth(), image.getHeight(), 1));
+            vkCmdCopyBufferToImage(commandBuffer, staging.getBuffer(), image.getImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, region);
+
+            // Each level is blitted from the previous one, which is then done and moved to its sampled layout
+            barrier.subresourceRange().levelCount(1);
+            VkImageBlit.Buffer blit = VkImageBlit.calloc(1, stack);
+            blit.srcSubresource().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT).baseArrayLayer(0).layerCount(1);
+            blit.dstSubresource().aspectMask(VK_IMAGE_ASPECT_COLOR_BIT).baseArrayLayer(0).layerCount(1);
+            int width = image.getWidth(), height = image.getHeight();
+            for (int level = 1; level < image.getMipLevels(); level++) {
+                barrier.subresourceRange().baseMipLevel(level - 1);
+                barrier
+                        .srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                        .dstAccessMask(VK_ACCESS_TRANSFER_READ_BIT)
+                        .oldLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL)
+                        .newLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL);
+                vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_TRANSFER_BIT,
+                        0, null, null, barrier);
+
+                int nextWidth = Math.max(1, width / 2), nextHeight = Math.max(1, height / 2);
+                blit.srcSubresource().mipLevel(level - 1);
+                blit.srcOffsets(0).set(0, 0, 0);
+                blit.srcOffsets(1).set(width, height, 1);
+                blit.dstSubresource().mipLevel(level);
+                blit.dstOffsets(0).set(0, 0, 0);
+                blit.dstOffsets(1).set(nextWidth, nextHeight, 1);
+                vkCmdBlitImage(commandBuffer, image.getImage(), VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL,
+                        image.getImage(), VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL, blit, filter);
+
+                barrier
+                        .srcAccessMask(VK_ACCESS_TRANSFER_READ_BIT)
+                        .dstAccessMask(VK_ACCESS_SHADER_READ_BIT)
+                        .oldLayout(VK_IMAGE_LAYOUT_TRANSFER_SRC_OPTIMAL)
+                        .newLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+                vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT,
+                        0, null, null, barrier);
+                width = nextWidth;
+                height = nextHeight;
+            }
+
+            barrier.subresourceRange().baseMipLevel(image.getMipLevels() - 1);
+            barrier
+                    .srcAccessMask(VK_ACCESS_TRANSFER_WRITE_BIT)
+                    .dstAccessMask(VK_ACCESS_SHADER_READ_BIT)
+                    .oldLayout(VK_IMAGE_LAYOUT_TRANSFER_DST_OPTIMAL)
+                    .newLayout(VK_IMAGE_LAYOUT_SHADER_READ_ONLY_OPTIMAL);
+            vkCmdPipelineBarrier(commandBuffer, VK_PIPELINE_STAGE_TRANSFER_BIT, VK_PIPELINE_STAGE_ALL_COMMANDS_BIT,
+                    0, null, null, barrier);
+        }
+    }
+
+    private boolean supportsLinearBlit(int format) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkFormatProperties properties = VkFormatProperties.malloc(stack);
+            vkGetPhysicalDeviceFormatProperties(renderer.getPhysicalDevice(), format, properties);
+            return (properties.optimalTilingFeatures() & VK_FORMAT_FEATURE_SAMPLED_IMAGE_FILTER_LINEAR_BIT) != 0;
+        }
+    }
+
+    public synchronized Sampler getDefaultSampler() {
+        if (defaultSampler == null) defaultSampler = new Sampler(renderer);
+        return defaultSampler;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(threadCount, runnable -> {
+                Thread thread = new Thread(runnable, "Fuel3D-TextureLoader-" + threadIndex.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+
+    protected synchronized void destroy() { // Lets queued loads finish, their textures are destroyed with the renderer
+        if (executor == null) return;
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(10, TimeUnit.SECONDS))
+                renderer.getLogger().log(Logger.MessageType.WARNING, "Texture loader threads did not finish in time");
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package fuel3d;
+
+import org.lwjgl.PointerBuffer;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkCommandBuffer;
+import org.lwjgl.vulkan.VkCommandBufferAllocateInfo;
+import org.lwjgl.vulkan.VkCommandPoolCreateInfo;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.system.MemoryUtil.NULL;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class ThreadRecorder { // Records secondary command buffers on one worker thread, owns a command pool per frame in flight
+    private final Fuel3D renderer;
+    private long[] commandPools;
+    private final List<List<CmdRecorder>> recorders = new ArrayList<>(); // Per frame, reused every time the frame slot comes around
+    private final List<List<VkCommandBuffer>> commandBuffers = new ArrayList<>();
+    private final int[] usedCounts;
+    private long lastFrameNumber = -1;
+
+    public ThreadRecorder(Fuel3D renderer) {
+        this.renderer = renderer;
+        this.usedCounts = new int[renderer.getFramesInFlight()];
+        renderer.addThreadRecorder(this);
+
+        create();
+    }
+
+    protected void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkCommandPoolCreateInfo commandPoolInfo = VkCommandPoolCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(VK_COMMAND_POOL_CREATE_TRANSIENT_BIT)
+                    .queueFamilyIndex(renderer.getQueueIndices().graphics());
+            commandPools = new long[renderer.getFramesInFlight()];
+            for (int frame = 0; frame < commandPools.length; frame++) {
+                renderer.chErr(vkCreateCommandPool(renderer.getDevice(), commandPoolInfo, null, lb));
+                commandPools[frame] = lb.get(0);
+                recorders.add(new ArrayList<>());
+                commandBuffers.add(new ArrayList<>());
+            }
+        }
+    }
+
+    // Call from the worker thread after the primary recorder was started with Fuel3D.recordParallelWith
+    public CmdRecorder begin(CmdRecorder primary, Pipeline pipeline) {
+        int frame = renderer.getFrameIndex();
+        if (renderer.getFrameNumber() != lastFrameNumber) { // First use in this frame, the slot's previous work has finished
+            renderer.chErr(vkResetCommandPool(renderer.getDevice(), commandPools[frame], 0));
+            usedCounts[frame] = 0;
+            lastFrameNumber = renderer.getFrameNumber();
+        }
+
+        List<VkCommandBuffer> frameBuffers = commandBuffers.get(frame);
+        List<CmdRecorder> frameRecorders = recorders.get(frame);
+        if (usedCounts[frame] == frameBuffers.size()) {
+            frameBuffers.add(allocateCommandBuffer(commandPools[frame]));
+            frameRecorders.add(new CmdRecorder());
+        }
+
+        CmdRecorder recorder = frameRecorders.get(usedCounts[frame]);
+        recorder.startSecondary(frameBuffers.get(usedCounts[frame]), primary, pipeline, renderer);
+        usedCounts[frame]++;
+        return recorder;
+    }
+
+    private VkCommandBuffer allocateCommandBuffer(long commandPool) {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            PointerBuffer pb = stack.mallocPointer(1);
+
+            VkCommandBufferAllocateInfo commandBufferInfo = VkCommandBufferAllocateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .commandPool(commandPool)
+                    .level(VK_COMMAND_BUFFER_LEVEL_SECONDARY)
+                    .commandBufferCount(1);
+            renderer.chErr(vkAllocateCommandBuffers(renderer.getDevice(), commandBufferInfo, pb));
+            return new VkCommandBuffer(pb.get(0), renderer.getDevice());
+        }
+    }
+
+    public void destroy() {
+        destroyObjects();
+        renderer.removeThreadRecorder(this);
+    }
+
+    protected void destroyObjects() {
+        for (long commandPool : commandPools) {
+            vkDestroyCommandPool(renderer.getDevice(), commandPool, null); // Frees its command buffers
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package fuel3d;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector4fc;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkDescriptorPoolCreateInfo;
+import org.lwjgl.vulkan.VkDescriptorPoolSize;
+import org.lwjgl.vulkan.VkDescriptorSetAllocateInfo;
+import org.lwjgl.vulkan.VkPhysicalDeviceProperties;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+import static org.lwjgl.system.MemoryUtil.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+// Persistently mapped uniform memory split into one region per frame in flight. allocate bumps a pointer and returns
+// a dynamic offset, so per draw data needs neither a buffer nor a descriptor update. The ring has a single
+// UNIFORM_BUFFER_DYNAMIC binding 0 set, add getLayout() to the pipeline's descriptor layouts.
+public class UniformRing {
+    private final Fuel3D renderer;
+    private final Buffer buffer;
+    private final DescriptorLayout layout;
+    private final Object layoutKey;
+    private final long frameSize;
+    private final int maxRange; // The descriptor's range, every dynamic offset needs this many bytes behind it
+    private final int alignment; // minUniformBufferOffsetAlignment
+    private long pool;
+    private DescriptorSet set;
+    private long regionStart, cursor; // Of the current frame
+    private long lastFrameNumber = -1;
+
+    // frameSize: bytes per frame, maxRange: largest block a shader reads through the binding
+    public UniformRing(long frameSize, int maxRange, int stages, Fuel3D renderer) {
+        this.renderer = renderer;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            VkPhysicalDeviceProperties properties = VkPhysicalDeviceProperties.malloc(stack);
+            vkGetPhysicalDeviceProperties(renderer.getPhysicalDevice(), properties);
+            alignment = (int) properties.limits().minUniformBufferOffsetAlignment();
+            if (maxRange > properties.limits().maxUniformBufferRange())
+                renderer.getLogger().error("Uniform range " + maxRange + " exceeds maxUniformBufferRange");
+        }
+        this.frameSize = align(frameSize);
+        this.maxRange = maxRange;
+        if (maxRange > this.frameSize)
+            renderer.getLogger().error("Uniform range " + maxRange + " exceeds the frame size " + this.frameSize);
+        buffer = new Buffer(this.frameSize * renderer.getFramesInFlight(), VK_BUFFER_USAGE_UNIFORM_BUFFER_BIT,
+                MemoryAllocator.MemoryUsage.CPU_TO_GPU, renderer);
+        layout = new DescriptorLayout().binding(0, DescriptorLayout.DescriptorType.UNIFORM_BUFFER_DYNAMIC, stages);
+        layoutKey = layout.stateKey();
+        renderer.addUniformRing(this);
+
+        create();
+    }
+
+    private void create() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            LongBuffer lb = stack.mallocLong(1);
+
+            VkDescriptorPoolSize.Buffer poolSize = VkDescriptorPoolSize.malloc(1, stack)
+                    .type(VK_DESCRIPTOR_TYPE_UNIFORM_BUFFER_DYNAMIC)
+                    .descriptorCount(1);
+            VkDescriptorPoolCreateInfo poolInfo = VkDescriptorPoolCreateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .flags(0)
+                    .maxSets(1)
+                    .pPoolSizes(poolSize);
+            renderer.chErr(vkCreateDescriptorPool(renderer.getDevice(), poolInfo, null, lb));
+            pool = lb.get(0);
+
+            VkDescriptorSetAllocateInfo allocateInfo = VkDescriptorSetAllocateInfo.malloc(stack)
+                    .sType$Default()
+                    .pNext(NULL)
+                    .descriptorPool(pool)
+                    .pSetLayouts(stack.longs(renderer.getPipelineRegistry().acquireSetLayout(layout)));
+            renderer.chErr(vkAllocateDescriptorSets(renderer.getDevice(), allocateInfo, lb));
+            set = new DescriptorSet(lb.get(0), layout, renderer);
+            set.buffer(0, 0, buffer, 0, maxRange); // Written once, draws pick their block with the dynamic offset
+        }
+    }
+
+    private long align(long size) {
+        return (size + alignment - 1) / alignment * alignment;
+    }
+
+    public int allocate(int size) { // Returns the dynamic offset, write to it with put and pass it to bind
+        if (renderer.getFrameNumber() != lastFrameNumber) { // The first allocation in a frame starts over in that frame's region
+            lastFrameNumber = renderer.getFrameNumber();
+            regionStart = frameSize * renderer.getFrameIndex();
+            cursor = 0;
+        }
+        // The bound range starts at the offset, so it has to stay inside the region even for smaller blocks
+        if (cursor + Math.max(size, maxRange) > frameSize) renderer.getLogger().error("Uniform ring is full (" + frameSize + " bytes per frame)");
+        long offset = regionStart + cursor;
+        cursor += align(size);
+        return (int) offset;
+    }
+
+    public UniformRing put(int offset, Matrix4fc matrix) { // offset: returned by allocate plus the member's offset
+        matrix.getToAddress(buffer.getMappedAddress() + offset);
+        return this;
+    }
+
+    public UniformRing put(int offset, Vector4fc vector) {
+        vector.getToAddress(buffer.getMappedAddress() + offset);
+        return this;
+    }
+
+    public UniformRing put(int offset, ByteBuffer data) {
+        memCopy(memAddress(data), buffer.getMappedAddress() + offset, data.remaining());
+        return this;
+    }
+
+    public void bind(CmdRecorder recorder, int setIndex, int offset) {
+        recorder.bindDescriptorSet(setIndex, set, offset);
+    }
+
+    public DescriptorLayout getLayout() {
+        return layout;
+    }
+
+    protected void destroyObjects() {
+        vkDestroyDescriptorPool(renderer.getDevice(), pool, null);
+        renderer.getPipelineRegistry().releaseSetLayout(layoutKey);
+    }
+
+    public void destroy() {
+        destroyObjects();
+        buffer.destroy();
+        renderer.removeUniformRing(this);
+    }
+}
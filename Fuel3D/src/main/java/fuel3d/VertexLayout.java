@@ -0,0 +1,94 @@
+package fuel3d;
+
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.vulkan.VkPipelineVertexInputStateCreateInfo;
+import org.lwjgl.vulkan.VkVertexInputAttributeDescription;
+import org.lwjgl.vulkan.VkVertexInputBindingDescription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.vulkan.VK10.*;
+
+public class VertexLayout { // Describes how vertex buffers bound with CmdRecorder are fed into the vertex shader
+    private final List<Binding> bindings = new ArrayList<>();
+    private final List<Attribute> attributes = new ArrayList<>();
+
+    public VertexLayout binding(int binding, int stride) {
+        bindings.add(new Binding(binding, stride, VK_VERTEX_INPUT_RATE_VERTEX));
+        return this;
+    }
+
+    public VertexLayout instanceBinding(int binding, int stride) { // Advances once per instance instead of per vertex
+        bindings.add(new Binding(binding, stride, VK_VERTEX_INPUT_RATE_INSTANCE));
+        return this;
+    }
+
+    public VertexLayout mat4Attribute(int location, int binding, int offset) { // A mat4 input takes 4 locations, one per column
+        for (int column = 0; column < 4; column++) {
+            attribute(location + column, binding, AttributeFormat.VEC4, offset + column * AttributeFormat.VEC4.getSize());
+        }
+        return this;
+    }
+
+    public VertexLayout attribute(int location, int binding, AttributeFormat format, int offset) {
+        attributes.add(new Attribute(location, binding, format, offset));
+        return this;
+    }
+
+    protected Object stateKey() { // Immutable snapshot for pipeline deduplication
+        return List.of(List.copyOf(bindings), List.copyOf(attributes));
+    }
+
+    protected void fill(VkPipelineVertexInputStateCreateInfo vertexInputStateInfo, MemoryStack stack) {
+        VkVertexInputBindingDescription.Buffer bindingDescriptions = VkVertexInputBindingDescription.malloc(bindings.size(), stack);
+        for (int i = 0; i < bindings.size(); i++) {
+            Binding binding = bindings.get(i);
+            bindingDescriptions.get(i)
+                    .binding(binding.binding)
+                    .stride(binding.stride)
+                    .inputRate(binding.inputRate);
+        }
+        VkVertexInputAttributeDescription.Buffer attributeDescriptions = VkVertexInputAttributeDescription.malloc(attributes.size(), stack);
+        for (int i = 0; i < attributes.size(); i++) {
+            Attribute attribute = attributes.get(i);
+            attributeDescriptions.get(i)
+                    .location(attribute.location)
+                    .binding(attribute.binding)
+                    .format(attribute.format.getFormat())
+                    .offset(attribute.offset);
+        }
+        vertexInputStateInfo
+                .pVertexBindingDescriptions(bindingDescriptions)
+                .pVertexAttributeDescriptions(attributeDescriptions);
+    }
+
+    protected record Binding(int binding, int stride, int inputRate) { }
+
+    protected record Attribute(int location, int binding, AttributeFormat format, int offset) { }
+
+    public enum AttributeFormat {
+        FLOAT(VK_FORMAT_R32_SFLOAT, 4),
+        VEC2(VK_FORMAT_R32G32_SFLOAT, 8),
+        VEC3(VK_FORMAT_R32G32B32_SFLOAT, 12),
+        VEC4(VK_FORMAT_R32G32B32A32_SFLOAT, 16),
+        INT(VK_FORMAT_R32_SINT, 4),
+        UINT(VK_FORMAT_R32_UINT, 4),
+        UBYTE4_NORM(VK_FORMAT_R8G8B8A8_UNORM, 4);
+
+        private final int format, size;
+
+        AttributeFormat(int format, int size) {
+            this.format = format;
+            this.size = size;
+        }
+
+        private int getFormat() {
+            return format;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+}
@@ -25,6 +25,8 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
     private Fuel3D renderer;
     private final boolean vSync;
     private boolean isVisible = false;
+    private boolean swapchainOutOfDate = false; // Resized, or the driver reported out of date/suboptimal
+    private int swapchainGeneration = 0; // Incremented on every recreation, WindowFramebuffers rebuild when it changes
 
     public Window(int width, int height, String title, Fuel3D renderer, boolean vSync) {
         this.width = width;
@@ -46,12 +48,14 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
 
     protected void initWindow(Fuel3D renderer) {
         this.renderer = renderer;
+        if (renderer.isHeadless())
+            renderer.getLogger().error("Cannot create a window with a headless renderer");
 
         try (MemoryStack stack = MemoryStack.stackPush()) {
             LongBuffer lb = stack.mallocLong(1);
 
             glfwWindowHint(GLFW_CLIENT_API, GLFW_NO_API);
-            glfwWindowHint(GLFW_RESIZABLE, GLFW_FALSE); //TODO: Window resize support
+            glfwWindowHint(GLFW_RESIZABLE, GLFW_TRUE);
             glfwWindowHint(GLFW_VISIBLE, GLFW_FALSE);
 
 
@@ -62,6 +66,7 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
             glfwSetFramebufferSizeCallback(window, (window, width, height) -> {
                 this.width = width;
                 this.height = height;
+                swapchainOutOfDate = true;
             });
 
             renderer.chErr(glfwCreateWindowSurface(renderer.getInstance(), window, null, lb));
@@ -81,6 +86,10 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
     }
 
     protected void createSwapChain() {
+        createSwapChain(VK_NULL_HANDLE);
+    }
+
+    private void createSwapChain(long oldSwapchain) {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             LongBuffer lb = stack.mallocLong(1);
             IntBuffer ib = stack.mallocInt(1);
@@ -103,7 +112,7 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
                     .compositeAlpha(VK_COMPOSITE_ALPHA_OPAQUE_BIT_KHR)
                     .presentMode(chooseSwapchainPresentMode(surfaceInfo))
                     .clipped(true)
-                    .oldSwapchain(VK_NULL_HANDLE);
+                    .oldSwapchain(oldSwapchain); // Lets the driver reuse resources of the swapchain being replaced
             if (renderer.getQueueIndices().present() != renderer.getQueueIndices().graphics()) {
                 swapchainInfo
                         .imageSharingMode(VK_SHARING_MODE_CONCURRENT)
@@ -127,6 +136,30 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
         }
     }
 
+    // Returns false if minimized, the swapchain is then kept until the window has a size again
+    protected boolean recreateSwapchain() {
+        if (isMinimized()) return false;
+
+        long oldSwapchain = swapchain;
+        Image[] oldImages = swapchainImages;
+        int oldFormat = swapchainImageFormat;
+        createSwapChain(oldSwapchain);
+        swapchainOutOfDate = false;
+        swapchainGeneration++;
+        if (swapchainImageFormat != oldFormat)
+            renderer.getLogger().log(Logger.MessageType.WARNING, "Swapchain format of window \"" + title + "\" changed, pipelines targeting it need to be recreated");
+
+        // Frames in flight may still use the old images, destroy them once those frames have finished instead of waiting for the device
+        renderer.retire(() -> {
+            for (Image oldImage : oldImages) {
+                oldImage.destroy();
+            }
+            vkDestroySwapchainKHR(renderer.getDevice(), oldSwapchain, null);
+        });
+        renderer.getLogger().log(Logger.MessageType.VERBOSE, "Recreated swapchain of window \"" + title + "\": " + width + "x" + height);
+        return true;
+    }
+
     private VkSurfaceFormatKHR chooseSwapchainSurfaceFormat(SurfaceInfo info) {
         for (VkSurfaceFormatKHR format : info.formats) {
             if (format.format() == VK_FORMAT_B8G8R8A8_SRGB && format.colorSpace() == VK_COLOR_SPACE_SRGB_NONLINEAR_KHR) {
@@ -159,15 +192,19 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
             return info.capabilities.currentExtent();
         }
         else {
+            IntBuffer framebufferWidth = stack.mallocInt(1), framebufferHeight = stack.mallocInt(1);
+            glfwGetFramebufferSize(window, framebufferWidth, framebufferHeight);
             VkExtent2D extent = VkExtent2D.malloc(stack)
-                    .width(width)
-                    .height(height);
+                    .width(framebufferWidth.get(0))
+                    .height(framebufferHeight.get(0));
             extent.width(Math.max(
                     info.capabilities.minImageExtent().width(),
                     Math.min(info.capabilities.maxImageExtent().width(), extent.width())));
             extent.height(Math.max(
                     info.capabilities.minImageExtent().height(),
                     Math.min(info.capabilities.maxImageExtent().height(), extent.height())));
+            width = extent.width();
+            height = extent.height();
             return extent;
         }
     }
@@ -238,8 +275,22 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
         return isVisible;
     }
 
+    public boolean isMinimized() { // Nothing can be presented, skip rendering to this window
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer framebufferWidth = stack.mallocInt(1), framebufferHeight = stack.mallocInt(1);
+            glfwGetFramebufferSize(window, framebufferWidth, framebufferHeight);
+            return framebufferWidth.get(0) == 0 || framebufferHeight.get(0) == 0;
+        }
+    }
+
+    public void waitEvents() { // Blocks until there is an event, for example while minimized
+        glfwWaitEvents();
+    }
+
     public void pollEvents() {
+        long start = System.nanoTime();
         glfwPollEvents();
+        if (renderer != null) renderer.getFrameMetrics().record(FrameMetrics.Phase.POLL_EVENTS, System.nanoTime() - start);
     }
 
     protected long getSurface() {
@@ -279,6 +330,18 @@ public class Window { // Contains the glfw window, the surface, and the swapchai
         return swapchainImages;
     }
 
+    protected void invalidateSwapchain() {
+        swapchainOutOfDate = true;
+    }
+
+    protected boolean isSwapchainOutOfDate() {
+        return swapchainOutOfDate;
+    }
+
+    protected int getSwapchainGeneration() {
+        return swapchainGeneration;
+    }
+
     protected record SurfaceInfo(VkSurfaceCapabilitiesKHR capabilities, VkSurfaceFormatKHR.Buffer formats, IntBuffer presentModes) {
         public boolean available() {
             return formats.capacity() != 0 && presentModes.capacity() != 0;
@@ -7,24 +7,28 @@ import java.nio.IntBuffer;
 import java.nio.LongBuffer;
 
 import static org.lwjgl.system.MemoryUtil.NULL;
-import static org.lwjgl.vulkan.KHRSwapchain.vkAcquireNextImageKHR;
+import static org.lwjgl.vulkan.KHRSwapchain.*;
 import static org.lwjgl.vulkan.VK10.*;
 
 public class WindowFramebuffer {
     private final Fuel3D renderer;
-    private final Framebuffer[] framebuffers;
+    private Framebuffer[] framebuffers;
     private final Window window;
+    private final Pipeline targetPipeline; // null if only used by a RenderGraph, which creates its own framebuffers
+    private int swapchainGeneration; // Of the swapchain images the framebuffers were created for
     private boolean nextImageRequested = false;
-    private long imageAcquisitionSemaphore;
+    private long[] imageAcquisitionSemaphores; // One per frame in flight, a semaphore is only reused once its frame has finished
     private int imageIndex;
 
+    public WindowFramebuffer(Window window, Fuel3D renderer) { // Acquire and present only, see RenderGraph.importWindow
+        this(window, null, renderer);
+    }
+
     public WindowFramebuffer(Window window, Pipeline targetPipeline, Fuel3D renderer) {
         this.renderer = renderer;
         this.window = window;
-        framebuffers = new Framebuffer[window.getSwapchainImages().length];
-        for (int i = 0; i < window.getSwapchainImages().length; i++) {
-            framebuffers[i] = new Framebuffer(window.getSwapchainImages()[i], targetPipeline, renderer);
-        }
+        this.targetPipeline = targetPipeline;
+        createFramebuffers();
         renderer.addWindowFramebuffer(this);
 
         create();
@@ -38,8 +42,34 @@ public class WindowFramebuffer {
                     .sType$Default()
                     .pNext(NULL)
                     .flags(0);
-            renderer.chErr(vkCreateSemaphore(renderer.getDevice(), semaphoreInfo, null, lb));
-            this.imageAcquisitionSemaphore = lb.get(0);
+            imageAcquisitionSemaphores = new long[renderer.getFramesInFlight()];
+            for (int frame = 0; frame < imageAcquisitionSemaphores.length; frame++) {
+                renderer.chErr(vkCreateSemaphore(renderer.getDevice(), semaphoreInfo, null, lb));
+                imageAcquisitionSemaphores[frame] = lb.get(0);
+            }
+        }
+    }
+
+    private void createFramebuffers() {
+        framebuffers = new Framebuffer[targetPipeline == null ? 0 : window.getSwapchainImages().length];
+        for (int i = 0; i < framebuffers.length; i++) {
+            framebuffers[i] = new Framebuffer(window.getSwapchainImages()[i], targetPipeline, renderer);
+        }
+        swapchainGeneration = window.getSwapchainGeneration();
+    }
+
+    private void updateSwapchain() { // Recreates the window's swapchain if needed, and follows it if another WindowFramebuffer did
+        if (window.isSwapchainOutOfDate() && !window.recreateSwapchain())
+            renderer.getLogger().error("Cannot render to minimized window \"" + window.getTitle() + "\", check Window.isMinimized first");
+
+        if (swapchainGeneration != window.getSwapchainGeneration()) {
+            Framebuffer[] oldFramebuffers = framebuffers;
+            renderer.retire(() -> {
+                for (Framebuffer oldFramebuffer : oldFramebuffers) {
+                    oldFramebuffer.destroy();
+                }
+            });
+            createFramebuffers();
         }
     }
 
@@ -48,7 +78,15 @@ public class WindowFramebuffer {
             try (MemoryStack stack = MemoryStack.stackPush()) {
                 IntBuffer ib = stack.mallocInt(1);
 
-                vkAcquireNextImageKHR(renderer.getDevice(), window.getSwapchain(), Long.MAX_VALUE, imageAcquisitionSemaphore, VK_NULL_HANDLE, ib);
+                updateSwapchain();
+                int result = vkAcquireNextImageKHR(renderer.getDevice(), window.getSwapchain(), Long.MAX_VALUE, getImageAcquisitionSemaphore(), VK_NULL_HANDLE, ib);
+                if (result == VK_ERROR_OUT_OF_DATE_KHR) { // The semaphore was not signaled, so it can be used again right away
+                    window.invalidateSwapchain();
+                    updateSwapchain();
+                    result = vkAcquireNextImageKHR(renderer.getDevice(), window.getSwapchain(), Long.MAX_VALUE, getImageAcquisitionSemaphore(), VK_NULL_HANDLE, ib);
+                }
+                if (result == VK_SUBOPTIMAL_KHR) window.invalidateSwapchain(); // Still presentable, recreated next frame
+                renderer.chErr(result);
                 imageIndex = ib.get(0);
                 nextImageRequested = true;
             }
@@ -69,7 +107,9 @@ public class WindowFramebuffer {
     }
 
     protected void destroyObjects() {
-        vkDestroySemaphore(renderer.getDevice(), imageAcquisitionSemaphore, null);
+        for (long imageAcquisitionSemaphore : imageAcquisitionSemaphores) {
+            vkDestroySemaphore(renderer.getDevice(), imageAcquisitionSemaphore, null);
+        }
     }
 
     protected Framebuffer[] getFramebuffers() {
@@ -85,7 +125,7 @@ public class WindowFramebuffer {
     }
 
     protected long getImageAcquisitionSemaphore() {
-        return imageAcquisitionSemaphore;
+        return imageAcquisitionSemaphores[renderer.getFrameIndex()];
     }
 
     public Window getWindow() {
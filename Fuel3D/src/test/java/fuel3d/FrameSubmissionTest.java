@@ -0,0 +1,69 @@
+package fuel3d;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.lwjgl.vulkan.VkPresentInfoKHR;
+import org.lwjgl.vulkan.VkSubmitInfo;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.lwjgl.vulkan.VK10.*;
+
+public class FrameSubmissionTest {
+    private FrameSubmission submission;
+
+    @BeforeEach public void create() {
+        submission = new FrameSubmission(1, 2, 3);
+    }
+
+    @AfterEach public void free() {
+        submission.free();
+    }
+
+    @Test public void moreWaitsThanLastFrame() { // The slot's buffers are limited to the previous frame's counts after submitting
+        submission.reset();
+        submission.addWait(10, 1, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        assertEquals(1, submission.prepareSubmit(1).waitSemaphoreCount());
+
+        submission.reset();
+        for (int i = 0; i < 3; i++) {
+            submission.addWait(20 + i, i, VK_PIPELINE_STAGE_VERTEX_INPUT_BIT);
+        }
+        VkSubmitInfo submitInfo = submission.prepareSubmit(2);
+        assertEquals(3, submitInfo.waitSemaphoreCount());
+        assertEquals(22, submitInfo.pWaitSemaphores().get(2));
+        assertEquals(VK_PIPELINE_STAGE_VERTEX_INPUT_BIT, submitInfo.pWaitDstStageMask().get(2));
+    }
+
+    @Test public void growsPastInitialWaitCapacity() {
+        submission.reset();
+        for (int i = 0; i < 32; i++) {
+            submission.addWait(i, i, VK_PIPELINE_STAGE_TRANSFER_BIT);
+        }
+        assertEquals(32, submission.prepareSubmit(1).waitSemaphoreCount());
+    }
+
+    @Test public void offscreenFrameSignalsOnlyTheTimeline() {
+        submission.reset();
+        assertEquals(1, submission.prepareSubmit(5).signalSemaphoreCount());
+    }
+
+    @Test public void presentAfterSkippedFrame() { // A minimized window presents nothing, the next frame presents again
+        submission.ensureCapacity(2);
+        submission.reset();
+        submission.preparePresent();
+        submission.prepareSubmit(1);
+
+        submission.reset();
+        submission.addPresent(null, 30, 40, 0);
+        submission.addPresent(null, 31, 41, 2);
+        VkPresentInfoKHR presentInfo = submission.preparePresent();
+        assertEquals(2, presentInfo.swapchainCount());
+        assertEquals(41, presentInfo.pSwapchains().get(1));
+        assertEquals(2, presentInfo.pImageIndices().get(1));
+        VkSubmitInfo submitInfo = submission.prepareSubmit(2);
+        assertEquals(2, submitInfo.waitSemaphoreCount());
+        assertEquals(2, submitInfo.signalSemaphoreCount());
+        assertEquals(2, submission.getPresentCount());
+    }
+}
@@ -0,0 +1,75 @@
+package fuel3d;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistogramTest {
+    @Test public void emptyHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0.0, histogram.getMean());
+    }
+
+    @Test public void exactBelowFirstMagnitude() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 64; value++) {
+            histogram.record(value);
+        }
+        assertEquals(31, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(63, histogram.getValueAtPercentile(100));
+        assertEquals(31.5, histogram.getMean());
+    }
+
+    @Test public void bucketsBoundTheRecordedValue() { // The reported value is the top of the value's bucket, within 1/64 of it
+        for (long value = 64; value < 1L << 40; value = value * 5 / 4 + 1) {
+            Histogram histogram = new Histogram();
+            histogram.record(value);
+            histogram.record(Long.MAX_VALUE); // Keeps the result from being capped at max
+            long reported = histogram.getValueAtPercentile(50);
+            assertTrue(reported >= value, value + " reported as " + reported);
+            assertTrue(reported - value <= value / 64, value + " reported as " + reported);
+        }
+    }
+
+    @Test public void bucketBoundaries() {
+        Histogram histogram = new Histogram();
+        histogram.record(128);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(129, histogram.getValueAtPercentile(50)); // 128 and 129 share a bucket
+    }
+
+    @Test public void percentilesStayWithinRecordedRange() {
+        Histogram histogram = new Histogram();
+        for (long value = 1000; value <= 100_000; value += 1000) {
+            histogram.record(value);
+        }
+        assertEquals(100_000, histogram.getValueAtPercentile(100)); // Capped at max, not the top of its bucket
+        assertTrue(histogram.getValueAtPercentile(0) >= 1000);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p99 >= 99_000 && p99 <= 100_000, "p99 " + p99);
+        assertEquals(1000, histogram.getMin());
+    }
+
+    @Test public void clampsOutOfRangeValues() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(0, histogram.getMin());
+        assertEquals(Long.MAX_VALUE, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals((1L << 41) - 1, histogram.getValueAtPercentile(100)); // Top of the last bucket
+    }
+
+    @Test public void resetClearsEverything() {
+        Histogram histogram = new Histogram();
+        histogram.record(500);
+        histogram.reset();
+        assertEquals(0, histogram.getTotalCount());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,91 @@
+package fuel3d;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MemoryAllocatorTest {
+    private static final long GRANULARITY = 1024;
+
+    @Test public void firstFitWithAlignment() {
+        MemoryAllocator.FreeList ranges = new MemoryAllocator.FreeList(4096, 1);
+        MemoryAllocator.Chunk a = ranges.allocate(100, 1, true);
+        MemoryAllocator.Chunk b = ranges.allocate(100, 256, true);
+        assertEquals(0, a.getOffset());
+        assertEquals(256, b.getOffset());
+        assertEquals(100, b.getSize());
+        assertTrue(ranges.getHead().getNext().isFree()); // The padding before b stays free
+    }
+
+    @Test public void freeMergesNeighbours() {
+        MemoryAllocator.FreeList ranges = new MemoryAllocator.FreeList(4096, 1);
+        MemoryAllocator.Chunk a = ranges.allocate(1000, 1, true);
+        MemoryAllocator.Chunk b = ranges.allocate(1000, 1, true);
+        MemoryAllocator.Chunk c = ranges.allocate(1000, 1, true);
+        ranges.free(a);
+        ranges.free(c); // Merges with the free tail
+        assertFalse(ranges.isEmpty());
+        ranges.free(b); // Merges with both sides
+        assertTrue(ranges.isEmpty());
+        assertEquals(4096, ranges.getHead().getSize());
+    }
+
+    @Test public void reusesFreedRange() {
+        MemoryAllocator.FreeList ranges = new MemoryAllocator.FreeList(3000, 1);
+        MemoryAllocator.Chunk a = ranges.allocate(1000, 1, true);
+        ranges.allocate(2000, 1, true);
+        assertNull(ranges.allocate(1, 1, true));
+        ranges.free(a);
+        assertEquals(0, ranges.allocate(500, 1, true).getOffset());
+    }
+
+    @Test public void linearAndOptimalDoNotSharePages() {
+        MemoryAllocator.FreeList ranges = new MemoryAllocator.FreeList(8 * GRANULARITY, GRANULARITY);
+        MemoryAllocator.Chunk buffer = ranges.allocate(100, 16, true);
+        MemoryAllocator.Chunk image = ranges.allocate(100, 16, false);
+        assertEquals(0, buffer.getOffset());
+        assertEquals(GRANULARITY, image.getOffset()); // Moved to the next page
+        MemoryAllocator.Chunk image2 = ranges.allocate(100, 16, false);
+        assertEquals(GRANULARITY + 100 + 12, image2.getOffset()); // Same kind, may share the page
+    }
+
+    @Test public void rangeBeforeDifferentKindIsSkipped() {
+        MemoryAllocator.FreeList ranges = new MemoryAllocator.FreeList(4 * GRANULARITY, GRANULARITY);
+        MemoryAllocator.Chunk first = ranges.allocate(GRANULARITY / 2, 1, false);
+        ranges.allocate(GRANULARITY / 2, 1, false);
+        ranges.allocate(GRANULARITY, 1, false);
+        ranges.free(first);
+        // The free range at 0 ends in the page of the following optimal resource, so a buffer goes after it
+        MemoryAllocator.Chunk buffer = ranges.allocate(64, 1, true);
+        assertTrue(buffer.getOffset() >= 2 * GRANULARITY, "offset " + buffer.getOffset());
+        assertEquals(0, ranges.allocate(64, 1, false).getOffset());
+    }
+
+    @Test public void randomAllocationsNeverOverlap() {
+        MemoryAllocator.FreeList ranges = new MemoryAllocator.FreeList(1 << 20, GRANULARITY);
+        Random random = new Random(7);
+        List<MemoryAllocator.Chunk> live = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            if (!live.isEmpty() && random.nextInt(3) == 0) {
+                ranges.free(live.remove(random.nextInt(live.size())));
+                continue;
+            }
+            long alignment = 1L << random.nextInt(9);
+            MemoryAllocator.Chunk chunk = ranges.allocate(1 + random.nextInt(8192), alignment, random.nextBoolean());
+            if (chunk == null) continue;
+            assertEquals(0, chunk.getOffset() % alignment);
+            live.add(chunk);
+        }
+        live.sort((a, b) -> Long.compare(a.getOffset(), b.getOffset()));
+        for (int i = 1; i < live.size(); i++) {
+            MemoryAllocator.Chunk previous = live.get(i - 1);
+            assertTrue(previous.getOffset() + previous.getSize() <= live.get(i).getOffset());
+        }
+        live.forEach(ranges::free);
+        assertTrue(ranges.isEmpty());
+    }
+}
@@ -0,0 +1,69 @@
+package fuel3d;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelineRegistryTest {
+    private static PipelineKey key(int format) {
+        return new PipelineKey(null, null, List.of(format), 0, 0, null, List.of(), 0, 0,
+                Pipeline.DepthTest.NONE, true, false, false, 1);
+    }
+
+    private static PipelineRegistry.RenderPassKey renderPassKey(int format) {
+        return new PipelineRegistry.RenderPassKey(List.of(format), 0, 0, false, 1);
+    }
+
+    @Test public void equalKeysShareOnePipeline() {
+        PipelineRegistry registry = new PipelineRegistry(null);
+        int[] created = {0};
+        registry.obtain(key(1), () -> { created[0]++; return null; });
+        registry.obtain(key(1), () -> { created[0]++; return null; });
+        registry.obtain(key(2), () -> { created[0]++; return null; });
+        assertEquals(2, created[0]);
+        assertEquals(2, registry.getSharedPipelineCount());
+
+        assertFalse(registry.release(key(1))); // Still obtained once
+        assertTrue(registry.release(key(1)));
+        assertEquals(1, registry.getSharedPipelineCount());
+        assertTrue(registry.release(key(1))); // Unknown keys are not referenced
+    }
+
+    @Test public void renderPassesAreDestroyedWithTheLastReference() {
+        PipelineRegistry registry = new PipelineRegistry(null);
+        List<Long> destroyed = new ArrayList<>();
+        assertEquals(10, registry.acquireRenderPass(renderPassKey(1), () -> 10));
+        assertEquals(10, registry.acquireRenderPass(renderPassKey(1), () -> 11)); // Not created again
+        assertEquals(20, registry.acquireRenderPass(renderPassKey(2), () -> 20));
+        assertEquals(2, registry.getRenderPassCount());
+
+        registry.releaseRenderPass(renderPassKey(1), destroyed::add);
+        assertTrue(destroyed.isEmpty());
+        registry.releaseRenderPass(renderPassKey(1), destroyed::add);
+        assertEquals(List.of(10L), destroyed);
+        assertEquals(1, registry.getRenderPassCount());
+
+        registry.releaseRenderPass(renderPassKey(1), destroyed::add); // Over-release is ignored
+        assertEquals(List.of(10L), destroyed);
+        assertEquals(30, registry.acquireRenderPass(renderPassKey(1), () -> 30)); // Created again after the last release
+    }
+
+    @Test public void layoutKeysIgnoreStagesWithoutPushConstants() {
+        PipelineRegistry registry = new PipelineRegistry(null);
+        PipelineRegistry.LayoutKey vertex = registry.acquireLayoutKey(List.of(), DescriptorLayout.VERTEX, 0);
+        PipelineRegistry.LayoutKey fragment = registry.acquireLayoutKey(List.of(), DescriptorLayout.FRAGMENT, 0);
+        assertEquals(vertex, fragment);
+
+        List<Long> destroyed = new ArrayList<>();
+        registry.acquireLayout(vertex, () -> 5);
+        registry.acquireLayout(fragment, () -> 6);
+        assertEquals(1, registry.getLayoutCount());
+        registry.releaseLayout(vertex, destroyed::add);
+        registry.releaseLayout(fragment, destroyed::add);
+        assertEquals(List.of(5L), destroyed);
+        assertEquals(0, registry.getLayoutCount());
+    }
+}
@@ -8,6 +8,12 @@ import com.sun.jna.ptr.IntByReference;
 import fuel3d.*;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.lwjgl.system.MemoryUtil.*;
 
 import static com.sun.jna.platform.win32.Wincon.ENABLE_VIRTUAL_TERMINAL_PROCESSING;
 
@@ -54,34 +60,56 @@ public class Main {
         Window mainWindow = new Window(1920, 1080, "hi", null, true);
         Fuel3D f3d = new Fuel3D(f3dSettings, mainWindow);
 
-        Shader vertShader = Shader.fromGLSLFile("C:/Users/gwch3/IdeaProjects/VroomEngine/VRuntime/src/main/resources/shaders/vert.glsl",
-                Shader.ShaderType.VertexShader, f3d);
-        Shader fragShader = Shader.fromGLSLFile("C:/Users/gwch3/IdeaProjects/VroomEngine/VRuntime/src/main/resources/shaders/frag.glsl",
-                Shader.ShaderType.FragmentShader, f3d);
-
-        Pipeline pipeline = new Pipeline(vertShader, fragShader, mainWindow, f3d);
+        List<CompletableFuture<Shader>> compiledShaders = f3d.getShaderCompiler().compileAll(List.of(
+                new ShaderCompiler.Job(Paths.get("C:/Users/gwch3/IdeaProjects/VroomEngine/VRuntime/src/main/resources/shaders/vert.glsl"),
+                        Shader.ShaderType.VertexShader),
+                new ShaderCompiler.Job(Paths.get("C:/Users/gwch3/IdeaProjects/VroomEngine/VRuntime/src/main/resources/shaders/frag.glsl"),
+                        Shader.ShaderType.FragmentShader)));
+        Shader vertShader = compiledShaders.get(0).join();
+        Shader fragShader = compiledShaders.get(1).join();
+
+        Pipeline.Settings pipelineSettings = new Pipeline.Settings();
+        pipelineSettings.vertexLayout = new VertexLayout()
+                .binding(0, 5 * Float.BYTES)
+                .attribute(0, 0, VertexLayout.AttributeFormat.VEC2, 0)
+                .attribute(1, 0, VertexLayout.AttributeFormat.VEC3, 2 * Float.BYTES);
+        Pipeline pipeline = new Pipeline(vertShader, fragShader, mainWindow, pipelineSettings, f3d);
+
+        float[] vertices = {
+                0.0f, -0.5f, 1.0f, 0.0f, 0.0f,
+                0.5f, 0.5f, 0.0f, 1.0f, 0.0f,
+                -0.5f, 0.5f, 0.0f, 0.0f, 1.0f
+        };
+        short[] indices = {0, 1, 2};
+        Buffer vertexBuffer = Buffer.vertexBuffer((long) vertices.length * Float.BYTES, f3d);
+        Buffer indexBuffer = Buffer.indexBuffer((long) indices.length * Short.BYTES, f3d);
+        ByteBuffer uploadData = memAlloc(vertices.length * Float.BYTES);
+        uploadData.asFloatBuffer().put(vertices);
+        vertexBuffer.upload(uploadData, 0);
+        uploadData.clear().asShortBuffer().put(indices);
+        uploadData.limit(indices.length * Short.BYTES);
+        indexBuffer.upload(uploadData, 0);
+        memFree(uploadData);
 
         WindowFramebuffer framebuffer = new WindowFramebuffer(mainWindow, pipeline, f3d);
+        f3d.getFrameMetrics().addSink(new LogMetricsSink(logger));
 
         mainWindow.visible(true);
 
-        int frameCount = 0;
-        long countStart = System.nanoTime();
         while (!mainWindow.windowShouldClose()) {
-            frameCount++;
-
             mainWindow.pollEvents();
+            if (mainWindow.isMinimized()) {
+                mainWindow.waitEvents();
+                continue;
+            }
             int frame = f3d.nextFrame();
             try (CmdRecorder recorder = f3d.recordWith(framebuffer, pipeline)) {
-                recorder.drawVertices(3);
+                recorder.bindVertexBuffer(0, vertexBuffer, 0);
+                recorder.bindIndexBuffer(indexBuffer, 0, CmdRecorder.IndexType.UINT16);
+                recorder.drawIndexed(indices.length, 0, 0);
             }
             f3d.endFrame();
             f3d.enqueueFrame(frame);
-            if ((System.nanoTime() - countStart) >= 1000*1000*1000) {
-                mainWindow.setTitle("hi | FPS: " + frameCount);
-                countStart = System.nanoTime();
-                frameCount = 0;
-            }
         }
 
         f3d.destroy();